@@ -0,0 +1,157 @@
+package cache;
+
+/**
+ * This class defines a generic class AdaptiveHierarchy<T> that represents a two-level cache
+ * hierarchy whose split between the 1st-level and 2nd-level cache is tuned online under a fixed
+ * total budget. Like the two-level test, the 2nd-level cache contains everything in the 1st level.
+ * Each level keeps a ghost list, which holds only the keys of objects recently evicted from it.
+ * A reference that misses a level but is found in that level's ghost list would have hit if the
+ * level were a little bigger, so capacity is moved towards that level:
+ *  a 1st-level ghost hit that is served by the 2nd level grows the 1st level
+ *  a 2nd-level ghost hit (a miss in both levels) grows the 2nd level
+ * The amount moved follows the ARC rule: the ratio of the two ghost list sizes, at least one entry.
+ * The 1st level never grows past half of the budget, so the 2nd level can always contain it.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ * @see Test
+ *
+ * @param <T>
+ */
+public class AdaptiveHierarchy<T> {
+	private Cache<T> cache;
+	private Cache<T> cache2;
+	private BoundedSet<T> ghost1;
+	private BoundedSet<T> ghost2;
+	private int totalSize;
+	private double target; // desired 1st-level size
+	private long shifts;
+	private long sizeSum;
+	private int references;
+
+	/**
+     * Constructs an AdaptiveHierarchy with the given total budget and initial 1st-level size.
+     *
+     * @param totalSize The number of entries shared between both levels.
+     * @param initialSize The initial size of the 1st-level cache.
+     * @param cache The 1st-level cache, whose size will be adjusted.
+     * @param cache2 The 2nd-level cache, whose size will be adjusted.
+     */
+	public AdaptiveHierarchy(int totalSize, int initialSize, Cache<T> cache, Cache<T> cache2) {
+		if (totalSize < 2) {
+			throw new IllegalArgumentException("total size must be at least 2");
+		}
+		this.totalSize = totalSize;
+		this.cache = cache;
+		this.cache2 = cache2;
+		ghost1 = new BoundedSet<T>(totalSize);
+		ghost2 = new BoundedSet<T>(totalSize);
+		target = clamp(initialSize);
+		shifts = sizeSum = 0;
+		references = 0;
+		resize();
+	}
+
+	/**
+     * Looks up a key in the hierarchy, inserting it on a miss and adapting the split if the
+     * reference hits a ghost list.
+     *
+     * @param key The key to look up.
+     * @return 1 for a 1st-level hit, 2 for a 2nd-level hit, 0 for a miss in both levels.
+     */
+	public int search(T key) {
+		references++;
+		sizeSum += cache.getCacheSize();
+		if (cache.search(key)) {
+			touch2(key);
+			return 1;
+		}
+		boolean inGhost1 = ghost1.remove(key);
+		if (cache2.search(key)) {
+			if (inGhost1) {
+				shift(Math.max(1.0, (double) ghost2.size() / Math.max(1, ghost1.size())));
+			}
+			insert1(key);
+			return 2;
+		}
+		if (ghost2.remove(key)) {
+			shift(-Math.max(1.0, (double) ghost1.size() / Math.max(1, ghost2.size())));
+		}
+		touch2(key);
+		insert1(key);
+		return 0;
+	}
+
+	/**
+     * Moves the desired 1st-level size by the given amount and resizes both levels
+     * if the whole-entry split changed.
+     *
+     * @param delta Entries to move to the 1st level (negative to move them to the 2nd level).
+     */
+	private void shift(double delta) {
+		int before = (int) target;
+		target = clamp(target + delta);
+		if ((int) target != before) {
+			shifts++;
+			resize();
+		}
+	}
+
+	/** Applies the current target split to both caches, moving evicted keys to the ghost lists. */
+	private void resize() {
+		int size1 = (int) target;
+		for (T evicted : cache.setCacheSize(size1)) {
+			ghost1.add(evicted);
+		}
+		for (T evicted : cache2.setCacheSize(totalSize - size1)) {
+			ghost2.add(evicted);
+		}
+	}
+
+	/**
+     * Keeps the 1st-level size between one entry and half of the budget.
+     *
+     * @param size The proposed 1st-level size.
+     * @return The size limited to the allowed range.
+     */
+	private double clamp(double size) {
+		return Math.max(1.0, Math.min(size, totalSize / 2));
+	}
+
+	/**
+     * Inserts a key into the 1st-level cache.
+     *
+     * @param key The key to insert.
+     */
+	private void insert1(T key) {
+		T evicted = cache.addObject(key);
+		if (evicted != null) {
+			ghost1.add(evicted);
+		}
+	}
+
+	/**
+     * Makes a key the most recently used entry of the 2nd-level cache, inserting it if needed.
+     *
+     * @param key The key to move or insert.
+     */
+	private void touch2(T key) {
+		cache2.removeObject(key);
+		T evicted = cache2.addObject(key);
+		if (evicted != null) {
+			ghost2.add(evicted);
+		}
+	}
+
+	/** @return current size of the 1st-level cache */
+	public int getSize1() {return cache.getCacheSize();}
+
+	/** @return current size of the 2nd-level cache */
+	public int getSize2() {return cache2.getCacheSize();}
+
+	/** @return number of times the split between the levels changed */
+	public long getShifts() {return shifts;}
+
+	/** @return 1st-level size averaged over all references */
+	public double getAverageSize1() {return references == 0 ? 0.0 : (double) sizeSum / references;}
+}
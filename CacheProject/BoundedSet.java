@@ -0,0 +1,59 @@
+package cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class defines a generic class BoundedSet<T> that represents a set which forgets its
+ * oldest members once it grows past a fixed size. It is used for key-only bookkeeping such as
+ * ghost lists of recently evicted keys, where losing old entries is acceptable but unbounded
+ * growth is not.
+ *
+ * @author Andrew Kobus
+ *
+ * @param <T>
+ */
+class BoundedSet<T> {
+	private final LinkedHashMap<T, Boolean> members;
+
+	/**
+     * Constructs an empty BoundedSet.
+     *
+     * @param limit The maximum number of members kept.
+     */
+	BoundedSet(final int limit) {
+		members = new LinkedHashMap<T, Boolean>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<T, Boolean> eldest) {
+				return size() > limit;
+			}
+		};
+	}
+
+	/**
+     * Adds a key as the newest member, evicting the oldest member if the set is full.
+     *
+     * @param key The key to add.
+     */
+	void add(T key) {
+		members.remove(key);
+		members.put(key, Boolean.TRUE);
+	}
+
+	/**
+     * Removes a key from the set.
+     *
+     * @param key The key to remove.
+     * @return true if the key was a member, false otherwise.
+     */
+	boolean remove(T key) {
+		return members.remove(key) != null;
+	}
+
+	/** @return number of members */
+	int size() {
+		return members.size();
+	}
+}
@@ -1,14 +1,25 @@
 package cache;
 
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * This class defines a generic class Cache<T> that represents a cache data structure.
- * This cache is implemented using a linked list to store elements of type T. 
+ * This cache is implemented using a linked list to store elements of type T, in order of use,
+ * and a hash set of the same elements that answers membership in constant time.
  * The cache has a maximum size specified during its instantiation, and it 
  * maintains counts for the number of cache references (NR), the number of cache 
- * hits (NH), and provides a hit ratio (HR).
+ * hits (NH), the number of evictions (NE), and provides a hit ratio (HR).
  * This cache implementation follows a basic Least Recently Used (LRU) eviction policy.
+ * Optionally, a HotKeyTracker can observe every search to report the most referenced keys,
+ * and a soft-reference overflow tier can keep evicted elements for as long as the heap has room.
+ * Hits in the overflow tier (NOH) promote the element back into the cache and are counted
+ * separately from the hits in the cache itself. A compressed tier can sit between the two:
+ * it keeps a fixed number of the most recently evicted (cold) elements as compressed bytes,
+ * which are decompressed and promoted back into the cache on a hit (NCH).
+ * Evictions, misses and slow searches are also reported as Java Flight Recorder events
+ * (cache.Eviction, cache.Miss and cache.SlowLookup) while a recording has them enabled.
  * 
  * @author Andrew Kobus
  * @see Test
@@ -17,8 +28,12 @@ import java.util.LinkedList;
  */
 public class Cache<T> {
 	private LinkedList<T> cache;
+	private HashSet<T> members;
 	private int cacheSize;
-	private int NR, NH;
+	private int NR, NH, NOH, NCH, NE;
+	private HotKeyTracker<T> hotKeys;
+	private SoftTier<T> overflow;
+	private CompressedTier<T> compressed;
 	
 	/**
      * Constructs a Cache object with the specified maximum size.
@@ -27,8 +42,48 @@ public class Cache<T> {
      */
 	public Cache(int size) {
 		cache = new LinkedList<T>();
+		members = new HashSet<T>();
 		cacheSize = size;
-		NR = NH = 0;
+		NR = NH = NOH = NCH = NE = 0;
+		hotKeys = null;
+		overflow = null;
+		compressed = null;
+	}
+	
+	/**
+     * Constructs a Cache object with the specified maximum size that also tracks
+     * the most frequently searched keys.
+     *
+     * @param size The maximum size of the cache.
+     * @param trackedKeys The number of keys the hot key tracker monitors.
+     * @see HotKeyTracker
+     */
+	public Cache(int size, int trackedKeys) {
+		this(size);
+		hotKeys = new HotKeyTracker<T>(trackedKeys);
+	}
+	
+	/**
+     * Enables the overflow tier. From now on, evicted objects are kept through soft references
+     * until the garbage collector needs the memory, and searches fall back to the overflow tier.
+     */
+	public void enableOverflow() {
+		if (overflow == null) {
+			overflow = new SoftTier<T>();
+		}
+	}
+	
+	/**
+     * Enables the compressed tier. From now on, evicted objects are compressed into a tier of the
+     * given size, and objects evicted from that tier move on to the overflow tier, if enabled.
+     *
+     * @param entries The maximum number of objects held by the compressed tier.
+     * @param codec Converts objects to bytes and back.
+     */
+	public void enableCompression(int entries, Codec<T> codec) {
+		if (compressed == null) {
+			compressed = new CompressedTier<T>(entries, codec);
+		}
 	}
 	
 	/**
@@ -41,16 +96,32 @@ public class Cache<T> {
 		return cache.get(index);
 	}
 	
+	/**
+     * Gets a copy of the cached objects, most recently used first.
+     *
+     * @return A list of every object in the cache.
+     */
+	public List<T> getObjects() {
+		return new LinkedList<T>(cache);
+	}
+	
 	/**
      * Adds an object to the cache. If the cache is full, removes the last element to make room for the new one.
      *
      * @param obj The object to be added to the cache.
+     * @return The object that was evicted to make room, or null if nothing was evicted.
      */
-	public void addObject(T obj) {
+	public T addObject(T obj) {
+		T evicted = null;
+		removeFromTiers(obj); // never hold an object in two tiers
 		if (cache.size() == cacheSize) {
-			cache.removeLast();
+			evicted = cache.removeLast();
+			members.remove(evicted);
+			evict(evicted, "capacity");
 		}
 		cache.addFirst(obj);
+		members.add(obj);
+		return evicted;
 	}
 	
 	 /**
@@ -60,45 +131,201 @@ public class Cache<T> {
      * @return true if the object was successfully removed, false otherwise.
      */
 	public boolean removeObject(T obj) {
-		return cache.remove(obj);
+		boolean removed = members.remove(obj) && cache.remove(obj);
+		if (removeFromTiers(obj)) {
+			removed = true;
+		}
+		return removed;
+	}
+	
+	/**
+     * Removes an object from the compressed and overflow tiers.
+     *
+     * @param obj The object to remove.
+     * @return true if either tier held the object, false otherwise.
+     */
+	private boolean removeFromTiers(T obj) {
+		boolean removed = false;
+		if (compressed != null && compressed.remove(obj)) {
+			removed = true;
+		}
+		if (overflow != null && overflow.remove(obj)) {
+			removed = true;
+		}
+		return removed;
+	}
+	
+	/**
+     * Counts an object removed from the end of the cache, demotes it, and reports the
+     * eviction to Flight Recorder if the event is enabled.
+     *
+     * @param obj The evicted object.
+     * @param reason Why the object was evicted: capacity or resize.
+     */
+	private void evict(T obj, String reason) {
+		NE++;
+		String destination = demote(obj);
+		if (CacheEvictionEvent.TYPE.isEnabled()) {
+			CacheEvictionEvent event = new CacheEvictionEvent();
+			event.key = String.valueOf(obj);
+			event.reason = reason;
+			event.destination = destination;
+			event.cacheSize = cacheSize;
+			event.commit();
+		}
+	}
+	
+	/**
+     * Moves an object evicted from the cache into the compressed tier, and whatever that
+     * pushes out (or the object itself) into the overflow tier.
+     *
+     * @param obj The evicted object.
+     * @return The tier the object moved to: compressed, overflow or none.
+     */
+	private String demote(T obj) {
+		String destination = "none";
+		if (compressed != null) {
+			destination = "compressed";
+			obj = compressed.put(obj);
+		}
+		if (obj != null && overflow != null) {
+			overflow.put(obj);
+			if (destination.equals("none")) {
+				destination = "overflow";
+			}
+		}
+		return destination;
 	}
 	
+	/**
+     * Changes the maximum size of the cache. If the cache holds more objects than the
+     * new size allows, the least recently used objects are evicted.
+     *
+     * @param size The new maximum size of the cache.
+     * @return The evicted objects, least recently used last.
+     */
+	public List<T> setCacheSize(int size) {
+		cacheSize = size;
+		LinkedList<T> evicted = new LinkedList<T>();
+		while (cache.size() > cacheSize) {
+			T obj = cache.removeLast();
+			members.remove(obj);
+			evicted.add(obj);
+			evict(obj, "resize");
+		}
+		return evicted;
+	}
+	
+	/**
+     * Gets the maximum size of the cache.
+     *
+     * @return The maximum number of objects the cache holds.
+     */
+	public int getCacheSize() {return cacheSize;}
+	
+	/**
+     * Gets the number of objects currently in the cache.
+     *
+     * @return The number of cached objects.
+     */
+	public int size() {return cache.size();}
+	
 	/**
      * Clears all elements from the cache.
      */
 	public void clearCache() {
 		cache.clear();
+		members.clear();
+		if (compressed != null) {
+			compressed.clear();
+		}
+		if (overflow != null) {
+			overflow.clear();
+		}
 	}
 	
 	/**
      * Searches for an object in the cache. If found (hit), updates hit count and moves the object to the top of the cache.
+     * Otherwise, if the compressed tier or the overflow tier holds the object, updates that tier's
+     * hit count and promotes the object back to the top of the cache.
      *
      * @param obj The object to search for in the cache.
-     * @return true if the object is found in the cache (hit), false otherwise.
+     * @return true if the object is found in the cache or one of its tiers (hit), false otherwise.
      */
 	public boolean search(T obj) {
+		SlowLookupEvent slow = null;
+		if (SlowLookupEvent.TYPE.isEnabled()) { // only time searches while a recording wants them
+			slow = new SlowLookupEvent();
+			slow.begin();
+		}
 		NR++;
+		if (hotKeys != null) {
+			hotKeys.record(obj);
+		}
 		boolean isHit = false;
+		String result = "cache";
 		// search cache
-		for (T element : cache) {
-			if (element.equals(obj)) { // hit
-				isHit = true;
-				NH++;
-				moveToTop(obj);
-				break;
+		if (members.contains(obj)) { // hit
+			isHit = true;
+			NH++;
+			moveToTop(obj);
+		}
+		if (!isHit && compressed != null && compressed.remove(obj)) { // compressed tier hit
+			isHit = true;
+			result = "compressed";
+			NCH++;
+			addObject(obj);
+		}
+		if (!isHit && overflow != null && overflow.remove(obj)) { // overflow hit
+			isHit = true;
+			result = "overflow";
+			NOH++;
+			addObject(obj);
+		}
+		if (!isHit) {
+			result = "miss";
+			if (CacheMissEvent.TYPE.isEnabled()) {
+				CacheMissEvent event = new CacheMissEvent();
+				event.key = String.valueOf(obj);
+				event.cacheSize = cacheSize;
+				event.commit();
+			}
+		}
+		if (slow != null) {
+			slow.end();
+			if (slow.shouldCommit()) {
+				slow.key = String.valueOf(obj);
+				slow.result = result;
+				slow.cacheSize = cacheSize;
+				slow.commit();
 			}
 		}
 		return isHit;
 	}
 	
 	/**
-     * Moves the specified object to the top of the cache.
+     * Checks whether an object is in the cache without counting a reference or changing its position.
+     *
+     * @param obj The object to look for.
+     * @return true if the object is in the cache, false otherwise.
+     */
+	public boolean contains(T obj) {
+		return members.contains(obj);
+	}
+	
+	/**
+     * Moves the specified object to the top of the cache. An object that is not in the cache
+     * (it may have been evicted, or only be held by a tier) is added as by addObject, so the
+     * cache never grows past its maximum size or holds an object in two tiers.
      *
      * @param obj The object to be moved to the top of the cache.
      */
 	public void moveToTop(T obj) {
-		cache.remove(obj);
-		cache.addFirst(obj);
+		if (members.contains(obj) && cache.remove(obj)) {
+			cache.addFirst(obj);
+		} else {
+			addObject(obj);
+		}
 	}
 
 	/**
@@ -121,4 +348,92 @@ public class Cache<T> {
      * @return The cache hit ratio.
      */
 	public double getHR() {return (double) NH / (double) NR;}
+	
+	/**
+     * Gets the number of objects evicted from the cache (NE).
+     *
+     * @return The number of evictions.
+     */
+	public int getNE() {return NE;}
+	
+	/**
+     * Gets the number of hits served by the overflow tier (NOH).
+     *
+     * @return The number of overflow tier hits.
+     */
+	public int getNOH() {return NOH;}
+	
+	/**
+     * Gets the number of hits served by the compressed tier (NCH).
+     *
+     * @return The number of compressed tier hits.
+     */
+	public int getNCH() {return NCH;}
+	
+	/**
+     * Gets the hit ratio counting hits in the cache and in every enabled tier.
+     *
+     * @return The combined hit ratio.
+     */
+	public double getTotalHR() {return (double) (NH + NCH + NOH) / (double) NR;}
+	
+	/**
+     * Gets the number of objects currently held by the overflow tier.
+     *
+     * @return The overflow tier size, or 0 if the overflow tier is disabled.
+     */
+	public int getOverflowSize() {return overflow == null ? 0 : overflow.size();}
+	
+	/**
+     * Gets the number of overflow tier objects the garbage collector has reclaimed.
+     *
+     * @return The number of cleared overflow entries, or 0 if the overflow tier is disabled.
+     */
+	public long getOverflowCleared() {return overflow == null ? 0 : overflow.getCleared();}
+	
+	/**
+     * Gets the number of objects currently held by the compressed tier.
+     *
+     * @return The compressed tier size, or 0 if the compressed tier is disabled.
+     */
+	public int getCompressedSize() {return compressed == null ? 0 : compressed.size();}
+	
+	/**
+     * Gets the compression ratio of the compressed tier: serialized bytes per stored byte.
+     *
+     * @return The compression ratio, or 0 if the compressed tier is empty or disabled.
+     */
+	public double getCompressionRatio() {return compressed == null ? 0.0 : compressed.getCompressionRatio();}
+	
+	/**
+     * Gets the average serialized size of the objects in the compressed tier, before compression.
+     *
+     * @return The average raw size in bytes, or 0 if the compressed tier is empty or disabled.
+     */
+	public double getCompressedRawBytesPerEntry() {
+		return getCompressedSize() == 0 ? 0.0 : (double) compressed.getRawBytes() / compressed.size();
+	}
+	
+	/**
+     * Gets the estimated heap footprint of one compressed tier entry, including its bookkeeping.
+     *
+     * @return The average bytes per entry, or 0 if the compressed tier is empty or disabled.
+     */
+	public double getCompressedBytesPerEntry() {
+		return getCompressedSize() == 0 ? 0.0
+				: (double) compressed.getStoredBytes() / compressed.size() + CompressedTier.ENTRY_OVERHEAD;
+	}
+	
+	/**
+     * Gets the most frequently searched keys, highest count first.
+     *
+     * @param k The number of keys to report.
+     * @return The top k keys with their counts and error bounds, or an empty list if hot keys are not tracked.
+     */
+	public List<HotKeyTracker.HotKey<T>> getHotKeys(int k) {
+		if (hotKeys == null) {
+			return new LinkedList<HotKeyTracker.HotKey<T>>();
+		}
+		return hotKeys.getTopKeys(k);
+	}
 }
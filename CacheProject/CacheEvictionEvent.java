@@ -0,0 +1,39 @@
+package cache;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event committed whenever a Cache evicts an object, either to make room
+ * for a new one or because the cache was resized.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ *
+ */
+@Name("cache.Eviction")
+@Label("Cache Eviction")
+@Category({"Cache"})
+@Description("An object was evicted from a cache")
+class CacheEvictionEvent extends Event {
+	/** checked before creating an event, so evicting costs nothing extra while recording is off */
+	static final EventType TYPE = EventType.getEventType(CacheEvictionEvent.class);
+
+	@Label("Key")
+	String key;
+
+	@Label("Reason")
+	@Description("capacity (making room for a new object) or resize")
+	String reason;
+
+	@Label("Destination")
+	@Description("The tier the object moved to: compressed, overflow or none")
+	String destination;
+
+	@Label("Cache Size")
+	int cacheSize;
+}
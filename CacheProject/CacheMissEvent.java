@@ -0,0 +1,30 @@
+package cache;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event committed whenever a Cache search misses the cache and all of its tiers.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ *
+ */
+@Name("cache.Miss")
+@Label("Cache Miss")
+@Category({"Cache"})
+@Description("A searched object was not found in a cache or its tiers")
+class CacheMissEvent extends Event {
+	/** checked before creating an event, so a miss costs nothing extra while recording is off */
+	static final EventType TYPE = EventType.getEventType(CacheMissEvent.class);
+
+	@Label("Key")
+	String key;
+
+	@Label("Cache Size")
+	int cacheSize;
+}
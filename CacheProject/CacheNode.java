@@ -0,0 +1,202 @@
+package cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * This class is a single cache node of a cache cluster. Each node runs in its own process,
+ * owns one Cache<String>, and serves requests from ClusterClient over a local socket.
+ * Requests are binary frames: an operation byte, a key count, and that many UTF-8 keys.
+ * Frames on a connection are answered strictly in order, which lets the client pipeline
+ * several frames before reading any responses.
+ *
+ * @author Andrew Kobus
+ * @see ClusterClient
+ * @see Cache
+ *
+ */
+public class CacheNode {
+	/** look up each key, inserting it on a miss; answers one byte per key (1 = hit) */
+	static final byte SEARCH = 1;
+	/** insert each key (or make it most recently used); answers the number of keys */
+	static final byte PUT = 2;
+	/** answers every cached key, least recently used first */
+	static final byte DUMP = 3;
+	/** remove each key; answers the number of keys removed */
+	static final byte REMOVE = 4;
+	/** answers references, hits, entries and busy time in nanoseconds */
+	static final byte STATS = 5;
+	/** closes the connection and stops the node */
+	static final byte SHUTDOWN = 6;
+	/** prefix of the line a node prints once it accepts connections */
+	static final String READY = "CacheNode listening on port ";
+
+	private Cache<String> cache;
+	private ServerSocket server;
+	private long busyNanos;
+	private volatile boolean running;
+
+	/**
+     * Starts a node from the command line and serves until it receives a shutdown request.
+     *
+     * @param args cache size and port (0 picks a free port).
+     */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("Usage: java cache.CacheNode [cache size] [port (0 for any free port)]");
+			return;
+		}
+		try {
+			CacheNode node = new CacheNode(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+			System.out.println(READY + node.getPort());
+			System.out.flush();
+			node.serve();
+		} catch (IOException e) {
+			System.out.println("CacheNode failed: " + e.getMessage());
+		}
+	}
+
+	/**
+     * Constructs a node listening on the loopback interface.
+     *
+     * @param size The size of the node's cache.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException if the server socket cannot be opened.
+     */
+	public CacheNode(int size, int port) throws IOException {
+		cache = new Cache<String>(size);
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		busyNanos = 0;
+		running = true;
+	}
+
+	/** @return the port this node listens on */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+     * Accepts connections until a shutdown request arrives. Each connection is served by its own thread.
+     */
+	public void serve() {
+		while (running) {
+			try {
+				final Socket socket = server.accept();
+				Thread handler = new Thread(() -> handle(socket));
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException e) {
+				// server socket closed by a shutdown request
+			}
+		}
+	}
+
+	/**
+     * Serves the frames of one connection until the client disconnects or shuts the node down.
+     *
+     * @param socket The client connection.
+     */
+	private void handle(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true) {
+				byte op;
+				try {
+					op = in.readByte();
+				} catch (EOFException e) {
+					break; // client disconnected
+				}
+				if (op == SHUTDOWN) {
+					running = false;
+					server.close();
+					break;
+				}
+				int count = in.readInt();
+				String[] keys = new String[count];
+				for (int i = 0; i < count; i++) {
+					keys[i] = in.readUTF();
+				}
+				synchronized (cache) {
+					long start = System.nanoTime();
+					execute(op, keys, out);
+					busyNanos += System.nanoTime() - start;
+				}
+				// only flush once the client has no further frames buffered
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+			socket.close();
+		} catch (IOException e) {
+			// connection lost, nothing left to serve
+		}
+	}
+
+	/**
+     * Executes one request frame and writes its response.
+     *
+     * @param op The requested operation.
+     * @param keys The keys sent with the request.
+     * @param out The stream to write the response to.
+     * @throws IOException if the response cannot be written.
+     */
+	private void execute(byte op, String[] keys, DataOutputStream out) throws IOException {
+		switch (op) {
+			case SEARCH:
+				for (String key : keys) {
+					boolean isHit = cache.search(key);
+					if (!isHit) {
+						cache.addObject(key);
+					}
+					out.writeByte(isHit ? 1 : 0);
+				}
+				break;
+			case PUT:
+				for (String key : keys) {
+					if (cache.contains(key)) {
+						cache.moveToTop(key);
+					} else {
+						cache.addObject(key);
+					}
+				}
+				out.writeInt(keys.length);
+				break;
+			case DUMP:
+				List<String> entries = cache.getObjects();
+				out.writeInt(entries.size());
+				ListIterator<String> it = entries.listIterator(entries.size());
+				while (it.hasPrevious()) {
+					out.writeUTF(it.previous());
+				}
+				break;
+			case REMOVE:
+				int removed = 0;
+				for (String key : keys) {
+					if (cache.removeObject(key)) {
+						removed++;
+					}
+				}
+				out.writeInt(removed);
+				break;
+			case STATS:
+				out.writeLong(cache.getNR());
+				out.writeLong(cache.getNH());
+				out.writeInt(cache.size());
+				out.writeLong(busyNanos);
+				break;
+			default:
+				throw new IOException("unknown operation " + op);
+		}
+	}
+}
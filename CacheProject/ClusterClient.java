@@ -0,0 +1,311 @@
+package cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class is the client side of a cache cluster. Keys are routed to CacheNode processes by
+ * consistent hashing: every node is placed on a 64-bit hash ring at many virtual positions,
+ * and a key belongs to the first node position at or after the key's hash.
+ * Lookups are batched, one frame per node per batch, and pipelined: several batches can be
+ * sent before their responses are read, so all nodes work while the client prepares more keys.
+ * When a node joins or leaves, only the keys whose owner changed are moved between nodes.
+ *
+ * @author Andrew Kobus
+ * @see CacheNode
+ * @see Test
+ *
+ */
+public class ClusterClient implements Closeable {
+	/** ring positions per node; more positions spread keys more evenly */
+	private static final int VIRTUAL_NODES = 128;
+
+	private TreeMap<Long, Node> ring;
+	private List<Node> nodes;
+	private ArrayDeque<Batch> pending;
+
+	/**
+     * Constructs a client with no nodes.
+     */
+	public ClusterClient() {
+		ring = new TreeMap<Long, Node>();
+		nodes = new ArrayList<Node>();
+		pending = new ArrayDeque<Batch>();
+	}
+
+	/**
+     * Connects to a node and adds it to the ring, moving the keys it now owns from the other nodes.
+     * Any pipelined batches are completed first.
+     *
+     * @param name The node's name, used for ring positions and reports.
+     * @param host The node's host.
+     * @param port The node's port.
+     * @return The number of keys moved to the new node.
+     * @throws IOException if the node cannot be reached.
+     */
+	public int addNode(String name, String host, int port) throws IOException {
+		drain();
+		Node node = new Node(name, new Socket(host, port));
+		for (int v = 0; v < VIRTUAL_NODES; v++) {
+			ring.put(hash(name + "#" + v), node);
+		}
+		nodes.add(node);
+		int moved = 0;
+		for (Node other : nodes) {
+			if (other == node) {
+				continue;
+			}
+			List<String> movedKeys = new ArrayList<String>();
+			for (String key : other.request(CacheNode.DUMP, new ArrayList<String>())) {
+				if (ownerOf(key) == node) {
+					movedKeys.add(key);
+				}
+			}
+			if (!movedKeys.isEmpty()) {
+				other.requestCount(CacheNode.REMOVE, movedKeys);
+				node.requestCount(CacheNode.PUT, movedKeys);
+				moved += movedKeys.size();
+			}
+		}
+		return moved;
+	}
+
+	/**
+     * Removes a node from the ring, hands its keys to their new owners and shuts it down.
+     * Any pipelined batches are completed first.
+     *
+     * @param index The position of the node in {@link #getNodeNames()}.
+     * @return The number of keys moved off the removed node.
+     * @throws IOException if a node cannot be reached.
+     */
+	public int removeNode(int index) throws IOException {
+		drain();
+		Node node = nodes.remove(index);
+		ring.values().removeIf(n -> n == node);
+		List<String> keys = node.request(CacheNode.DUMP, new ArrayList<String>());
+		if (!nodes.isEmpty()) {
+			Map<Node, List<String>> byOwner = new TreeMap<Node, List<String>>();
+			for (String key : keys) {
+				byOwner.computeIfAbsent(ownerOf(key), n -> new ArrayList<String>()).add(key);
+			}
+			for (Map.Entry<Node, List<String>> entry : byOwner.entrySet()) {
+				entry.getKey().requestCount(CacheNode.PUT, entry.getValue());
+			}
+		}
+		node.shutdown();
+		return keys.size();
+	}
+
+	/**
+     * Sends a batch of lookups without waiting for the answers. Each key is inserted
+     * into its node's cache on a miss.
+     *
+     * @param keys The keys to look up.
+     * @param count The number of keys of the array to use.
+     * @throws IOException if a node cannot be reached.
+     */
+	public void send(String[] keys, int count) throws IOException {
+		if (nodes.isEmpty()) {
+			throw new IllegalStateException("cluster has no nodes");
+		}
+		Batch batch = new Batch(count);
+		for (int i = 0; i < count; i++) {
+			Node owner = ownerOf(keys[i]);
+			batch.positions.computeIfAbsent(owner, n -> new ArrayList<Integer>()).add(i);
+		}
+		for (Map.Entry<Node, List<Integer>> entry : batch.positions.entrySet()) {
+			Node node = entry.getKey();
+			List<Integer> positions = entry.getValue();
+			node.out.writeByte(CacheNode.SEARCH);
+			node.out.writeInt(positions.size());
+			for (int i : positions) {
+				node.out.writeUTF(keys[i]);
+			}
+			node.out.flush();
+			node.keysRouted += positions.size();
+		}
+		pending.add(batch);
+	}
+
+	/**
+     * Reads the answers of the oldest batch that has been sent.
+     *
+     * @return hit (true) or miss (false) for every key of the batch, in the order they were sent.
+     * @throws IOException if a node cannot be reached.
+     */
+	public boolean[] receive() throws IOException {
+		Batch batch = pending.remove();
+		for (Map.Entry<Node, List<Integer>> entry : batch.positions.entrySet()) {
+			DataInputStream in = entry.getKey().in;
+			for (int i : entry.getValue()) {
+				batch.hits[i] = in.readByte() == 1;
+			}
+		}
+		return batch.hits;
+	}
+
+	/** @return number of batches sent but not yet received */
+	public int pendingBatches() {
+		return pending.size();
+	}
+
+	/**
+     * Reads the answers of all outstanding batches and discards them.
+     *
+     * @throws IOException if a node cannot be reached.
+     */
+	private void drain() throws IOException {
+		while (!pending.isEmpty()) {
+			receive();
+		}
+	}
+
+	/** @return names of the nodes currently in the ring */
+	public List<String> getNodeNames() {
+		List<String> names = new ArrayList<String>();
+		for (Node node : nodes) {
+			names.add(node.name);
+		}
+		return names;
+	}
+
+	/**
+     * Asks every node for its statistics.
+     *
+     * @return One entry per node: references, hits, cached entries, busy nanoseconds, keys routed by this client.
+     * @throws IOException if a node cannot be reached.
+     */
+	public List<long[]> getNodeStats() throws IOException {
+		drain();
+		List<long[]> stats = new ArrayList<long[]>();
+		for (Node node : nodes) {
+			node.out.writeByte(CacheNode.STATS);
+			node.out.writeInt(0);
+			node.out.flush();
+			stats.add(new long[] {node.in.readLong(), node.in.readLong(), node.in.readInt(),
+					node.in.readLong(), node.keysRouted});
+		}
+		return stats;
+	}
+
+	/**
+     * Shuts down every node in the cluster.
+     */
+	public void close() throws IOException {
+		drain();
+		for (Node node : nodes) {
+			node.shutdown();
+		}
+		nodes.clear();
+		ring.clear();
+	}
+
+	/**
+     * Finds the node that owns a key.
+     *
+     * @param key The key to route.
+     * @return The first node at or after the key's position on the ring.
+     */
+	private Node ownerOf(String key) {
+		Map.Entry<Long, Node> entry = ring.ceilingEntry(hash(key));
+		if (entry == null) {
+			entry = ring.firstEntry();
+		}
+		return entry.getValue();
+	}
+
+	/**
+     * Hashes a string onto the ring (FNV-1a over the characters, followed by a 64-bit finalizer
+     * so that similar keys land far apart).
+     *
+     * @param key The string to hash.
+     * @return The key's ring position.
+     */
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/** One batch of lookups in flight: where each node's keys came from and where the answers go. */
+	private static class Batch {
+		final TreeMap<Node, List<Integer>> positions = new TreeMap<Node, List<Integer>>();
+		final boolean[] hits;
+
+		Batch(int count) {
+			hits = new boolean[count];
+		}
+	}
+
+	/** A connection to one CacheNode. Nodes are ordered by name so batches visit them in a fixed order. */
+	private static class Node implements Comparable<Node> {
+		final String name;
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+		long keysRouted;
+
+		Node(String name, Socket socket) throws IOException {
+			this.name = name;
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			keysRouted = 0;
+		}
+
+		/** Sends a frame and reads back a list of keys. */
+		List<String> request(byte op, List<String> keys) throws IOException {
+			write(op, keys);
+			int count = in.readInt();
+			List<String> result = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				result.add(in.readUTF());
+			}
+			return result;
+		}
+
+		/** Sends a frame and reads back a count. */
+		int requestCount(byte op, List<String> keys) throws IOException {
+			write(op, keys);
+			return in.readInt();
+		}
+
+		private void write(byte op, List<String> keys) throws IOException {
+			out.writeByte(op);
+			out.writeInt(keys.size());
+			for (String key : keys) {
+				out.writeUTF(key);
+			}
+			out.flush();
+		}
+
+		void shutdown() throws IOException {
+			out.writeByte(CacheNode.SHUTDOWN);
+			out.flush();
+			socket.close();
+		}
+
+		public int compareTo(Node other) {
+			return name.compareTo(other.name);
+		}
+	}
+}
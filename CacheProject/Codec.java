@@ -0,0 +1,41 @@
+package cache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts cache elements to and from bytes, so that a cache tier can store them in serialized
+ * (for example compressed) form.
+ *
+ * @author Andrew Kobus
+ * @see CompressedTier
+ *
+ * @param <T>
+ */
+public interface Codec<T> {
+	/** codec for strings, stored as UTF-8 */
+	Codec<String> UTF8 = new Codec<String>() {
+		public byte[] encode(String obj) {
+			return obj.getBytes(StandardCharsets.UTF_8);
+		}
+
+		public String decode(byte[] bytes) {
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+
+	/**
+     * Serializes an element.
+     *
+     * @param obj The element to serialize.
+     * @return The element's bytes.
+     */
+	byte[] encode(T obj);
+
+	/**
+     * Deserializes an element.
+     *
+     * @param bytes Bytes produced by {@link #encode(Object)}.
+     * @return An element equal to the one that was encoded.
+     */
+	T decode(byte[] bytes);
+}
@@ -0,0 +1,260 @@
+package cache;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class defines a generic class CompressedTier<T> that holds cold elements evicted from a
+ * Cache as compressed byte arrays, trading a little CPU on every hit for a much smaller memory
+ * footprint per entry. Elements are serialized with a Codec and compressed with raw Deflate.
+ * Cache elements such as words are far too short to compress on their own, so the first few
+ * kilobytes of evicted data are collected into a preset dictionary that every later entry is
+ * compressed against. Entries are only decompressed when a search finds a matching hash code.
+ * The tier holds a fixed number of entries and evicts the least recently inserted one when full.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ * @see Codec
+ *
+ * @param <T>
+ */
+class CompressedTier<T> {
+	/** bytes of early evicted data used as the preset dictionary */
+	private static final int DICTIONARY_BYTES = 4096;
+	/** estimated heap bytes of a compressed entry besides its data: the entry object and array header */
+	static final int ENTRY_OVERHEAD = 56;
+	/** marks data stored as is */
+	private static final byte RAW = 0;
+	/** marks data compressed against the dictionary */
+	private static final byte DEFLATED = 1;
+
+	private final Codec<T> codec;
+	private final int capacity;
+	private HashMap<Integer, Entry> chains;
+	private Entry oldest, newest;
+	private int size;
+	private Deflater deflater;
+	private Inflater inflater;
+	private ByteArrayOutputStream dictionaryBuilder;
+	private byte[] dictionary;
+	private byte[] buffer;
+	private long rawBytes, storedBytes;
+
+	/**
+     * Constructs an empty CompressedTier.
+     *
+     * @param capacity The maximum number of entries held.
+     * @param codec Serializes elements to bytes and back.
+     */
+	CompressedTier(int capacity, Codec<T> codec) {
+		this.capacity = capacity;
+		this.codec = codec;
+		chains = new HashMap<Integer, Entry>();
+		oldest = newest = null;
+		size = 0;
+		deflater = new Deflater(Deflater.BEST_SPEED, true);
+		inflater = new Inflater(true);
+		dictionaryBuilder = new ByteArrayOutputStream(DICTIONARY_BYTES);
+		dictionary = null;
+		buffer = new byte[256];
+		rawBytes = storedBytes = 0;
+	}
+
+	/**
+     * Compresses an element into the tier. If the tier is full, its oldest entry is removed.
+     *
+     * @param obj The element to store.
+     * @return The removed oldest element, decompressed, or null if the tier was not full.
+     */
+	T put(T obj) {
+		byte[] raw = codec.encode(obj);
+		Entry entry = new Entry(obj.hashCode(), compress(raw), raw.length);
+		entry.chainNext = chains.put(entry.hash, entry);
+		entry.prev = newest;
+		if (newest != null) {
+			newest.next = entry;
+		} else {
+			oldest = entry;
+		}
+		newest = entry;
+		size++;
+		rawBytes += entry.rawLength;
+		storedBytes += entry.data.length;
+		if (size > capacity) {
+			Entry victim = oldest;
+			unlink(victim);
+			return codec.decode(decompress(victim));
+		}
+		return null;
+	}
+
+	/**
+     * Removes an element from the tier. Only entries with the element's hash code are decompressed.
+     *
+     * @param obj The element to remove.
+     * @return true if the element was in the tier, false otherwise.
+     */
+	boolean remove(T obj) {
+		int hash = obj.hashCode();
+		for (Entry e = chains.get(hash); e != null; e = e.chainNext) {
+			if (codec.decode(decompress(e)).equals(obj)) {
+				unlink(e);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+     * Removes every entry. The dictionary is kept.
+     */
+	void clear() {
+		chains.clear();
+		oldest = newest = null;
+		size = 0;
+		rawBytes = storedBytes = 0;
+	}
+
+	/** @return number of entries held */
+	int size() {return size;}
+
+	/** @return serialized size of the entries held, before compression */
+	long getRawBytes() {return rawBytes;}
+
+	/** @return size of the entries held as stored, after compression */
+	long getStoredBytes() {return storedBytes;}
+
+	/** @return raw bytes per stored byte of the entries held */
+	double getCompressionRatio() {return storedBytes == 0 ? 0.0 : (double) rawBytes / (double) storedBytes;}
+
+	/**
+     * Removes an entry from its hash chain and from the recency list.
+     *
+     * @param entry The entry to remove.
+     */
+	private void unlink(Entry entry) {
+		Entry head = chains.get(entry.hash);
+		if (head == entry) {
+			if (entry.chainNext != null) {
+				chains.put(entry.hash, entry.chainNext);
+			} else {
+				chains.remove(entry.hash);
+			}
+		} else {
+			Entry e = head;
+			while (e.chainNext != entry) {
+				e = e.chainNext;
+			}
+			e.chainNext = entry.chainNext;
+		}
+		if (entry.prev != null) {
+			entry.prev.next = entry.next;
+		} else {
+			oldest = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.prev = entry.prev;
+		} else {
+			newest = entry.prev;
+		}
+		size--;
+		rawBytes -= entry.rawLength;
+		storedBytes -= entry.data.length;
+	}
+
+	/**
+     * Compresses serialized data against the dictionary. Until the dictionary is complete,
+     * data is stored as is and added to the dictionary. Data that does not shrink is also stored as is.
+     *
+     * @param raw The serialized element.
+     * @return A marker byte followed by the stored data.
+     */
+	private byte[] compress(byte[] raw) {
+		if (dictionary == null) {
+			dictionaryBuilder.write(raw, 0, raw.length);
+			if (dictionaryBuilder.size() >= DICTIONARY_BYTES) {
+				dictionary = dictionaryBuilder.toByteArray();
+				dictionaryBuilder = null;
+			}
+			return stored(RAW, raw, raw.length);
+		}
+		deflater.reset();
+		deflater.setDictionary(dictionary);
+		deflater.setInput(raw);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+		if (length >= raw.length) {
+			return stored(RAW, raw, raw.length);
+		}
+		return stored(DEFLATED, buffer, length);
+	}
+
+	/**
+     * Builds the stored form of an entry.
+     *
+     * @param marker RAW or DEFLATED.
+     * @param data The bytes to store.
+     * @param length The number of bytes of data to store.
+     * @return The marker followed by the data.
+     */
+	private byte[] stored(byte marker, byte[] data, int length) {
+		byte[] result = new byte[length + 1];
+		result[0] = marker;
+		System.arraycopy(data, 0, result, 1, length);
+		return result;
+	}
+
+	/**
+     * Restores the serialized element of an entry.
+     *
+     * @param entry The entry to decompress.
+     * @return The serialized element.
+     */
+	private byte[] decompress(Entry entry) {
+		byte[] raw = new byte[entry.rawLength];
+		if (entry.data[0] == RAW) {
+			System.arraycopy(entry.data, 1, raw, 0, raw.length);
+			return raw;
+		}
+		try {
+			inflater.reset();
+			inflater.setDictionary(dictionary);
+			inflater.setInput(entry.data, 1, entry.data.length - 1);
+			int length = 0;
+			while (length < raw.length) {
+				int n = inflater.inflate(raw, length, raw.length - length);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				length += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("corrupt compressed cache entry", e);
+		}
+		return raw;
+	}
+
+	/** A compressed element, linked into its hash chain and into the recency list. */
+	private static class Entry {
+		final int hash;
+		final byte[] data;
+		final int rawLength;
+		Entry chainNext, prev, next;
+
+		Entry(int hash, byte[] data, int rawLength) {
+			this.hash = hash;
+			this.data = data;
+			this.rawLength = rawLength;
+		}
+	}
+}
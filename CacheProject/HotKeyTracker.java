@@ -0,0 +1,222 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class defines a generic class HotKeyTracker<T> that finds the heavy hitters (the most
+ * frequently referenced keys) of a cache access stream using a fixed amount of memory.
+ * It implements the Space-Saving algorithm over a Stream-Summary structure: at most
+ * {@code capacity} counters are kept, grouped into buckets of equal count that are linked in
+ * ascending order. Recording a key moves its counter to the neighbouring bucket, so every
+ * call to {@link #record(Object)} costs O(1) no matter how many distinct keys the stream has.
+ * When an untracked key arrives while all counters are in use, the counter with the smallest
+ * count is handed over to it, and that count is remembered as the new key's maximum error.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ *
+ * @param <T>
+ */
+public class HotKeyTracker<T> {
+	private HashMap<T, Counter<T>> counters;
+	private Bucket<T> minBucket, maxBucket;
+	private int capacity;
+
+	/**
+     * Constructs a HotKeyTracker that monitors at most the given number of keys.
+     * Any key that occurs more than n / capacity times in a stream of n keys is guaranteed to be tracked.
+     *
+     * @param capacity The number of counters to keep.
+     */
+	public HotKeyTracker(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		counters = new HashMap<T, Counter<T>>(capacity * 2);
+		minBucket = maxBucket = null;
+	}
+
+	/**
+     * Records one occurrence of the given key.
+     *
+     * @param key The key that was referenced.
+     */
+	public void record(T key) {
+		Counter<T> counter = counters.get(key);
+		if (counter == null) {
+			if (counters.size() < capacity) {
+				counter = new Counter<T>(key, 0);
+			} else {
+				// take over the counter with the smallest count
+				counter = minBucket.first;
+				counters.remove(counter.key);
+				counter.key = key;
+				counter.error = counter.bucket.count;
+			}
+			counters.put(key, counter);
+		}
+		increment(counter);
+	}
+
+	/**
+     * Moves a counter from its bucket to the bucket holding the next larger count,
+     * creating that bucket if it does not exist yet.
+     *
+     * @param counter The counter to increment.
+     */
+	private void increment(Counter<T> counter) {
+		Bucket<T> current = counter.bucket;
+		long newCount = (current == null) ? 1 : current.count + 1;
+		Bucket<T> next;
+		Bucket<T> before;
+		if (current == null) {
+			next = minBucket;
+			before = null;
+		} else {
+			next = current.next;
+			before = current;
+		}
+		Bucket<T> target;
+		if (next != null && next.count == newCount) {
+			target = next;
+		} else {
+			target = new Bucket<T>(newCount);
+			target.prev = before;
+			target.next = next;
+			if (next != null) {
+				next.prev = target;
+			} else {
+				maxBucket = target;
+			}
+			if (before != null) {
+				before.next = target;
+			} else {
+				minBucket = target;
+			}
+		}
+		if (current != null) {
+			current.unlink(counter);
+			if (current.first == null) {
+				removeBucket(current);
+			}
+		}
+		target.link(counter);
+	}
+
+	/**
+     * Unlinks an empty bucket from the bucket list.
+     *
+     * @param bucket The bucket to remove.
+     */
+	private void removeBucket(Bucket<T> bucket) {
+		if (bucket.prev != null) {
+			bucket.prev.next = bucket.next;
+		} else {
+			minBucket = bucket.next;
+		}
+		if (bucket.next != null) {
+			bucket.next.prev = bucket.prev;
+		} else {
+			maxBucket = bucket.prev;
+		}
+	}
+
+	/**
+     * Reports the k keys with the highest estimated counts, highest first.
+     * The walk starts from the largest bucket, so the cost depends on k and not on the stream length.
+     *
+     * @param k The maximum number of keys to report.
+     * @return The top keys together with their estimated counts and error bounds.
+     */
+	public List<HotKey<T>> getTopKeys(int k) {
+		List<HotKey<T>> top = new ArrayList<HotKey<T>>(Math.min(k, counters.size()));
+		Bucket<T> bucket = maxBucket;
+		while (bucket != null && top.size() < k) {
+			for (Counter<T> c = bucket.first; c != null && top.size() < k; c = c.next) {
+				top.add(new HotKey<T>(c.key, bucket.count, c.error));
+			}
+			bucket = bucket.prev;
+		}
+		return top;
+	}
+
+	/**
+     * One entry of a top-K report. The true number of occurrences of the key lies
+     * between {@code count - error} and {@code count}.
+     *
+     * @param <T>
+     */
+	public static class HotKey<T> {
+		private final T key;
+		private final long count;
+		private final long error;
+
+		private HotKey(T key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+
+		/** @return the tracked key */
+		public T getKey() {return key;}
+
+		/** @return the estimated (upper bound) number of occurrences */
+		public long getCount() {return count;}
+
+		/** @return the maximum overestimate included in the count */
+		public long getError() {return error;}
+
+		public String toString() {
+			return key + " " + count + " (at least " + (count - error) + ")";
+		}
+	}
+
+	/** A monitored key, linked into the bucket that holds its count. */
+	private static class Counter<T> {
+		T key;
+		long error;
+		Bucket<T> bucket;
+		Counter<T> prev, next;
+
+		Counter(T key, long error) {
+			this.key = key;
+			this.error = error;
+		}
+	}
+
+	/** A group of counters that share the same count. */
+	private static class Bucket<T> {
+		final long count;
+		Bucket<T> prev, next;
+		Counter<T> first;
+
+		Bucket(long count) {
+			this.count = count;
+		}
+
+		void link(Counter<T> counter) {
+			counter.bucket = this;
+			counter.prev = null;
+			counter.next = first;
+			if (first != null) {
+				first.prev = counter;
+			}
+			first = counter;
+		}
+
+		void unlink(Counter<T> counter) {
+			if (counter.prev != null) {
+				counter.prev.next = counter.next;
+			} else {
+				first = counter.next;
+			}
+			if (counter.next != null) {
+				counter.next.prev = counter.prev;
+			}
+			counter.prev = counter.next = null;
+		}
+	}
+}
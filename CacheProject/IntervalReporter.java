@@ -0,0 +1,169 @@
+package cache;
+
+import java.io.PrintStream;
+
+/**
+ * This class reports cache statistics while a replay is running. Every N references, or every
+ * T milliseconds, it emits one line with the hit ratio of each level, the throughput, and the
+ * eviction rate, both for the interval that just ended and for a sliding window made of the last
+ * few intervals. Lines are written as CSV (with a header) or as JSON objects, one per line.
+ * The statistics are computed from the caches' own cumulative counters: at every interval
+ * boundary a snapshot of the counters is stored in a fixed ring of primitive arrays, and interval
+ * and window values are differences between snapshots. Counting a reference therefore only
+ * increments a counter and never allocates.
+ *
+ * @author Andrew Kobus
+ * @see Test
+ *
+ */
+public class IntervalReporter {
+	/** references between clock checks when reporting by time */
+	private static final int CLOCK_CHECK_MASK = 1023;
+	// snapshot fields
+	private static final int REFS = 0, HITS1 = 1, REFS2 = 2, HITS2 = 3, EVICTIONS = 4, NANOS = 5, FIELDS = 6;
+
+	private final Cache<?> cache;
+	private final Cache<?> cache2;
+	private final long everyReferences;
+	private final long everyNanos;
+	private final boolean json;
+	private final PrintStream out;
+	private final long[][] ring;
+	private final long[] current;
+	private long references;
+	private long nextReferences;
+	private long nextNanos;
+	private long startNanos;
+	private int intervals;
+
+	/**
+     * Constructs an IntervalReporter and takes the first snapshot.
+     *
+     * @param cache The 1st-level cache.
+     * @param cache2 The 2nd-level cache, or null for a single level.
+     * @param everyReferences References per interval, or 0 to report by time only.
+     * @param everyMillis Milliseconds per interval, or 0 to report by reference count only.
+     * @param window Number of intervals in the sliding window.
+     * @param json true for JSON lines, false for CSV.
+     * @param out Where to write the report.
+     */
+	public IntervalReporter(Cache<?> cache, Cache<?> cache2, long everyReferences, long everyMillis,
+			int window, boolean json, PrintStream out) {
+		this.cache = cache;
+		this.cache2 = cache2;
+		this.everyReferences = everyReferences;
+		this.everyNanos = everyMillis * 1000000;
+		this.json = json;
+		this.out = out;
+		ring = new long[window + 1][FIELDS];
+		current = new long[FIELDS];
+		references = 0;
+		nextReferences = (everyReferences > 0) ? everyReferences : Long.MAX_VALUE;
+		startNanos = System.nanoTime();
+		nextNanos = (everyMillis > 0) ? startNanos + everyNanos : Long.MAX_VALUE;
+		intervals = 0;
+		snapshot(ring[0]);
+		if (!json) {
+			out.println("interval,references,elapsed_ms,l1_hit_ratio,l2_hit_ratio,hit_ratio,refs_per_sec,"
+					+ "evictions_per_kref,window_l1_hit_ratio,window_hit_ratio,window_refs_per_sec");
+		}
+	}
+
+	/**
+     * Counts one reference and emits a line if an interval has ended.
+     * Must be called after the reference has been looked up.
+     */
+	public void tick() {
+		references++;
+		if (references >= nextReferences) {
+			nextReferences += everyReferences;
+			emit();
+		} else if ((references & CLOCK_CHECK_MASK) == 0 && System.nanoTime() >= nextNanos) {
+			emit();
+		}
+	}
+
+	/**
+     * Emits a line for the references since the last interval ended, if there are any.
+     */
+	public void finish() {
+		snapshot(current);
+		if (current[REFS] > ring[intervals % ring.length][REFS]) {
+			emit();
+		}
+	}
+
+	/**
+     * Ends the current interval: takes a snapshot, writes the interval and window statistics,
+     * and stores the snapshot in the ring.
+     */
+	private void emit() {
+		snapshot(current);
+		long[] last = ring[intervals % ring.length];
+		// the oldest snapshot still in the ring starts the window
+		long[] first = ring[(intervals < ring.length - 2) ? 0 : (intervals + 2) % ring.length];
+		intervals++;
+		if (everyNanos > 0) {
+			nextNanos = current[NANOS] + everyNanos;
+		}
+
+		long refs = current[REFS] - last[REFS];
+		long hits1 = current[HITS1] - last[HITS1];
+		long refs2 = current[REFS2] - last[REFS2];
+		long hits2 = current[HITS2] - last[HITS2];
+		long evictions = current[EVICTIONS] - last[EVICTIONS];
+		long nanos = Math.max(1, current[NANOS] - last[NANOS]);
+		long windowRefs = current[REFS] - first[REFS];
+		long windowHits1 = current[HITS1] - first[HITS1];
+		long windowHits2 = current[HITS2] - first[HITS2];
+		long windowNanos = Math.max(1, current[NANOS] - first[NANOS]);
+
+		double l1 = ratio(hits1, refs);
+		double l2 = ratio(hits2, refs2);
+		double all = ratio(hits1 + hits2, refs);
+		double throughput = refs * 1e9 / nanos;
+		double evictionRate = ratio(evictions * 1000, refs);
+		double windowL1 = ratio(windowHits1, windowRefs);
+		double windowAll = ratio(windowHits1 + windowHits2, windowRefs);
+		double windowThroughput = windowRefs * 1e9 / windowNanos;
+		long elapsed = (current[NANOS] - startNanos) / 1000000;
+		if (json) {
+			out.printf("{\"interval\":%d,\"references\":%d,\"elapsed_ms\":%d,\"l1_hit_ratio\":%.6f,"
+					+ "\"l2_hit_ratio\":%.6f,\"hit_ratio\":%.6f,\"refs_per_sec\":%.0f,\"evictions_per_kref\":%.3f,"
+					+ "\"window_l1_hit_ratio\":%.6f,\"window_hit_ratio\":%.6f,\"window_refs_per_sec\":%.0f}%n",
+					intervals, current[REFS], elapsed, l1, l2, all, throughput, evictionRate,
+					windowL1, windowAll, windowThroughput);
+		} else {
+			out.printf("%d,%d,%d,%.6f,%.6f,%.6f,%.0f,%.3f,%.6f,%.6f,%.0f%n",
+					intervals, current[REFS], elapsed, l1, l2, all, throughput, evictionRate,
+					windowL1, windowAll, windowThroughput);
+		}
+		System.arraycopy(current, 0, ring[intervals % ring.length], 0, FIELDS);
+	}
+
+	/**
+     * Copies the caches' cumulative counters into a snapshot.
+     *
+     * @param snapshot The array to fill.
+     */
+	private void snapshot(long[] snapshot) {
+		snapshot[REFS] = cache.getNR();
+		snapshot[HITS1] = cache.getNH() + cache.getNCH() + cache.getNOH();
+		snapshot[EVICTIONS] = cache.getNE();
+		if (cache2 != null) {
+			snapshot[REFS2] = cache2.getNR();
+			snapshot[HITS2] = cache2.getNH() + cache2.getNCH() + cache2.getNOH();
+			snapshot[EVICTIONS] += cache2.getNE();
+		} else {
+			snapshot[REFS2] = snapshot[HITS2] = 0;
+		}
+		snapshot[NANOS] = System.nanoTime();
+	}
+
+	/**
+     * Divides two counts, treating an empty interval as a ratio of 0.
+     */
+	private static double ratio(long part, long whole) {
+		return whole == 0 ? 0.0 : (double) part / (double) whole;
+	}
+}
@@ -0,0 +1,175 @@
+package cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class defines a generic class Prefetcher<T> that speculatively inserts keys into a cache
+ * before they are referenced. It learns a first-order Markov model of the reference stream:
+ * for every recently seen key it keeps a small table of the keys that followed it and how often.
+ * After each access, the most likely successors of the accessed key are inserted into the cache.
+ * The successor table is bounded both in the number of keys (least recently used keys are
+ * forgotten) and in the number of successors remembered per key.
+ * The prefetcher also measures how well it is doing:
+ *  accuracy - the fraction of prefetched entries that were referenced while still cached
+ *  coverage - the fraction of would-be misses that were turned into hits by prefetching
+ *  pollution - the number of misses on entries that had been evicted to make room for a prefetch
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ * @see Test
+ *
+ * @param <T>
+ */
+public class Prefetcher<T> {
+	/** number of successors remembered for each key */
+	private static final int SUCCESSORS = 4;
+
+	private LinkedHashMap<T, Successors<T>> table;
+	private BoundedSet<T> outstanding;
+	private BoundedSet<T> victims;
+	private int degree;
+	private T previous;
+	private long issued, useful, misses, pollution;
+
+	/**
+     * Constructs a Prefetcher with the given table size and prefetch degree.
+     *
+     * @param maxKeys The maximum number of keys whose successors are remembered.
+     * @param degree The number of successors inserted after each access (at most 4).
+     * @param cacheSize The size of the cache being prefetched into, used to bound the bookkeeping sets.
+     */
+	public Prefetcher(final int maxKeys, int degree, int cacheSize) {
+		this.degree = Math.min(degree, SUCCESSORS);
+		table = new LinkedHashMap<T, Successors<T>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<T, Successors<T>> eldest) {
+				return size() > maxKeys;
+			}
+		};
+		outstanding = new BoundedSet<T>(2 * cacheSize);
+		victims = new BoundedSet<T>(2 * cacheSize);
+		previous = null;
+		issued = useful = misses = pollution = 0;
+	}
+
+	/**
+     * Records the outcome of a demand lookup. Must be called once for every reference,
+     * before the missed key is inserted into the cache.
+     *
+     * @param key The key that was looked up.
+     * @param hit true if the lookup hit in the cache being prefetched into.
+     */
+	public void recordAccess(T key, boolean hit) {
+		if (hit) {
+			if (outstanding.remove(key)) {
+				useful++;
+			}
+			victims.remove(key); // back in the cache, so a later miss is not caused by that prefetch
+		} else {
+			misses++;
+			outstanding.remove(key);
+			if (victims.remove(key)) {
+				pollution++;
+			}
+		}
+	}
+
+	/**
+     * Learns the transition from the previously accessed key to this one and inserts the
+     * most likely successors of this key into the cache. If a second-level cache is given,
+     * prefetched keys are inserted there as well so that it keeps containing the first level.
+     *
+     * @param key The key that was just accessed.
+     * @param cache The cache to prefetch into.
+     * @param cache2 The second-level cache, or null for a single-level hierarchy.
+     */
+	public void prefetch(T key, Cache<T> cache, Cache<T> cache2) {
+		if (previous != null) {
+			Successors<T> successors = table.get(previous);
+			if (successors == null) {
+				successors = new Successors<T>();
+				table.put(previous, successors);
+			}
+			successors.record(key);
+		}
+		previous = key;
+
+		Successors<T> successors = table.get(key);
+		if (successors == null) {
+			return;
+		}
+		for (int i = 0; i < degree && i < successors.size; i++) {
+			T next = successors.keys[i];
+			if (next.equals(key) || cache.contains(next)) {
+				continue;
+			}
+			issued++;
+			T evicted = cache.addObject(next);
+			outstanding.add(next);
+			victims.remove(next);
+			if (evicted != null) {
+				outstanding.remove(evicted);
+				victims.add(evicted);
+			}
+			if (cache2 != null && !cache2.contains(next)) {
+				cache2.addObject(next);
+			}
+		}
+	}
+
+	/** @return number of keys speculatively inserted */
+	public long getIssued() {return issued;}
+
+	/** @return number of prefetched keys that were referenced while cached */
+	public long getUseful() {return useful;}
+
+	/** @return number of misses on keys evicted by a prefetch */
+	public long getPollution() {return pollution;}
+
+	/** @return fraction of prefetches that were used */
+	public double getAccuracy() {return issued == 0 ? 0.0 : (double) useful / (double) issued;}
+
+	/** @return fraction of would-be misses that prefetching turned into hits */
+	public double getCoverage() {
+		return (useful + misses) == 0 ? 0.0 : (double) useful / (double) (useful + misses);
+	}
+
+	/**
+     * The successors seen after one key, kept sorted by descending count so that
+     * the most likely successor is always first.
+     *
+     * @param <T>
+     */
+	private static class Successors<T> {
+		@SuppressWarnings("unchecked")
+		final T[] keys = (T[]) new Object[SUCCESSORS];
+		final int[] counts = new int[SUCCESSORS];
+		int size = 0;
+
+		void record(T key) {
+			int i = 0;
+			while (i < size && !keys[i].equals(key)) {
+				i++;
+			}
+			if (i == size) {
+				if (size < SUCCESSORS) {
+					size++;
+				} else {
+					i = SUCCESSORS - 1; // replace the least frequent successor
+				}
+				keys[i] = key;
+				counts[i] = 0;
+			}
+			counts[i]++;
+			// bubble the updated successor towards the front
+			while (i > 0 && counts[i] > counts[i-1]) {
+				T k = keys[i]; keys[i] = keys[i-1]; keys[i-1] = k;
+				int c = counts[i]; counts[i] = counts[i-1]; counts[i-1] = c;
+				i--;
+			}
+		}
+	}
+}
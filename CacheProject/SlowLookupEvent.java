@@ -0,0 +1,38 @@
+package cache;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder event for a Cache search that took longer than the threshold (1 ms by
+ * default, configurable in the recording settings). Its duration can be matched against GC pauses
+ * and allocation samples of the same thread and time span.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ *
+ */
+@Name("cache.SlowLookup")
+@Label("Slow Cache Lookup")
+@Category({"Cache"})
+@Description("A cache search that took longer than the threshold")
+@Threshold("1 ms")
+class SlowLookupEvent extends Event {
+	/** checked before creating an event, so searching is not timed while recording is off */
+	static final EventType TYPE = EventType.getEventType(SlowLookupEvent.class);
+
+	@Label("Key")
+	String key;
+
+	@Label("Result")
+	@Description("Where the object was found: cache, compressed, overflow or miss")
+	String result;
+
+	@Label("Cache Size")
+	int cacheSize;
+}
@@ -0,0 +1,192 @@
+package cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+
+/**
+ * This class defines a generic class SoftTier<T> that holds objects evicted from a Cache through
+ * soft references. The garbage collector only clears soft references when it needs the memory, so
+ * the tier grows as long as the heap has room and shrinks by itself under memory pressure, without
+ * ever risking an OutOfMemoryError. Cleared references are delivered to a ReferenceQueue and unlinked
+ * the next time the tier is used.
+ * Entries live in an open-addressed table (linear probing) indexed by their hash codes, so lookups
+ * neither box the hash nor allocate. The table cannot be keyed by the objects themselves, because a
+ * strong reference from a map key would keep every object reachable and nothing would ever be cleared.
+ *
+ * @author Andrew Kobus
+ * @see Cache
+ *
+ * @param <T>
+ */
+class SoftTier<T> {
+	/** initial number of slots; always a power of two */
+	private static final int INITIAL_SLOTS = 16;
+
+	private Entry<T>[] slots;
+	private ReferenceQueue<T> queue;
+	private int size;
+	private long cleared;
+
+	/**
+     * Constructs an empty SoftTier.
+     */
+	SoftTier() {
+		slots = newSlots(INITIAL_SLOTS);
+		queue = new ReferenceQueue<T>();
+		size = 0;
+		cleared = 0;
+	}
+
+	/**
+     * Adds an object to the tier.
+     *
+     * @param obj The object to hold softly.
+     */
+	void put(T obj) {
+		expunge();
+		if (4 * (size + 1) > 3 * slots.length) {
+			resize();
+		}
+		insert(new Entry<T>(obj, obj.hashCode(), queue));
+		size++;
+	}
+
+	/**
+     * Removes an object from the tier if the garbage collector has not cleared it yet.
+     *
+     * @param obj The object to remove.
+     * @return true if the object was in the tier, false otherwise.
+     */
+	boolean remove(T obj) {
+		expunge();
+		int hash = obj.hashCode();
+		int mask = slots.length - 1;
+		for (int i = home(hash); slots[i] != null; i = (i + 1) & mask) {
+			Entry<T> e = slots[i];
+			if (e.hash == hash) {
+				T referent = e.get();
+				if (referent != null && referent.equals(obj)) {
+					delete(i);
+					e.clear();
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+     * Removes every object from the tier.
+     */
+	void clear() {
+		slots = newSlots(INITIAL_SLOTS);
+		while (queue.poll() != null) {
+			// discard pending notifications for entries that are already gone
+		}
+		size = 0;
+	}
+
+	/** @return number of entries, including any cleared but not yet unlinked */
+	int size() {
+		expunge();
+		return size;
+	}
+
+	/** @return number of entries the garbage collector has cleared so far */
+	long getCleared() {
+		expunge();
+		return cleared;
+	}
+
+	/**
+     * Unlinks the entries whose referents the garbage collector has cleared.
+     */
+	private void expunge() {
+		Reference<? extends T> ref;
+		while ((ref = queue.poll()) != null) {
+			int mask = slots.length - 1;
+			for (int i = home(((Entry<?>) ref).hash); slots[i] != null; i = (i + 1) & mask) {
+				if (slots[i] == ref) {
+					delete(i);
+					cleared++;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+     * @param hash An entry's hash code.
+     * @return The slot where probing for that hash code starts.
+     */
+	private int home(int hash) {
+		return (hash ^ (hash >>> 16)) & (slots.length - 1);
+	}
+
+	/**
+     * Puts an entry in the first free slot at or after its home slot. There must be a free slot.
+     *
+     * @param entry The entry to place.
+     */
+	private void insert(Entry<T> entry) {
+		int mask = slots.length - 1;
+		int i = home(entry.hash);
+		while (slots[i] != null) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = entry;
+	}
+
+	/**
+     * Empties a slot and shifts later entries of the same probe run back, so that every entry
+     * stays reachable from its home slot without leaving deleted markers behind.
+     *
+     * @param i The slot to empty.
+     */
+	private void delete(int i) {
+		int mask = slots.length - 1;
+		slots[i] = null;
+		for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+			int k = home(slots[j].hash);
+			// move the entry at j into the hole unless its home lies cyclically in (i, j]
+			boolean reachable = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+			if (!reachable) {
+				slots[i] = slots[j];
+				slots[j] = null;
+				i = j;
+			}
+		}
+		size--;
+	}
+
+	/** Doubles the number of slots and places every entry again. */
+	private void resize() {
+		Entry<T>[] old = slots;
+		slots = newSlots(2 * old.length);
+		for (Entry<T> e : old) {
+			if (e != null) {
+				insert(e);
+			}
+		}
+	}
+
+	/**
+     * @param length A power of two.
+     * @return An empty slot array of that length.
+     */
+	@SuppressWarnings("unchecked")
+	private static <T> Entry<T>[] newSlots(int length) {
+		return (Entry<T>[]) new Entry<?>[length];
+	}
+
+	/** A soft reference that remembers its hash code. */
+	private static class Entry<T> extends SoftReference<T> {
+		final int hash;
+
+		Entry(T referent, int hash, ReferenceQueue<T> queue) {
+			super(referent, queue);
+			this.hash = hash;
+		}
+	}
+}
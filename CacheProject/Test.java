@@ -1,8 +1,17 @@
 package cache;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.function.ToIntFunction;
 
 /**
  * This is a Test class with a main method that serves as the entry point for the program. 
@@ -16,33 +25,116 @@ import java.util.Scanner;
  */
 
 public class Test {
+	/** number of most referenced words reported at the end of a run */
+	private static final int TOP_WORDS = 10;
+	/** number of counters used to find the most referenced words */
+	private static final int TRACKED_WORDS = 100;
+	/** number of words whose successors the prefetcher remembers */
+	private static final int PREFETCH_TABLE_SIZE = 10000;
+	/** number of keys sent to the cluster per batch */
+	private static final int CLUSTER_BATCH = 256;
+	/** number of batches in flight before the cluster driver waits for answers */
+	private static final int CLUSTER_PIPELINE = 4;
+	/** estimated heap bytes of a cached word besides its characters: String, array header, list node */
+	private static final int WORD_ENTRY_OVERHEAD = 64;
+	/** number of intervals in the sliding window of the interval statistics */
+	private static final int INTERVAL_WINDOW = 10;
+	
+	/** prefetch degree, or 0 when prefetching is disabled */
+	private int prefetchDegree = 0;
+	/** true to replay through a TracePipeline instead of a single loop */
+	private boolean usePipeline = false;
+	/** true to keep evicted words in a soft-reference overflow tier */
+	private boolean useOverflow = false;
+	/** number of evicted words kept compressed, or 0 when the compressed tier is disabled */
+	private int compressedEntries = 0;
+	/** references per statistics interval, or 0 to not report by reference count */
+	private long intervalReferences = 0;
+	/** milliseconds per statistics interval, or 0 to not report by time */
+	private long intervalMillis = 0;
+	/** true to write interval statistics as JSON lines instead of CSV */
+	private boolean intervalJson = false;
+	/** true to track and report the most referenced words */
+	private boolean reportTopWords = false;
 	
 	/**
      * Entry point for the program. Parses command-line arguments to determine the test type,
      * cache sizes, and the file to process. Invokes the runTest method accordingly.
      * Prints usage information if the provided arguments are incorrect.
      *
-     * @param args Command-line arguments specifying the test number, cache sizes, and file name.
+     * @param args Command-line arguments specifying options, the test number, cache sizes, and file name.
      */
 	public static void main(String[] args) {
 		Test tester = new Test();
+		int first = tester.parseOptions(args);
+		if (first < 0 || first >= args.length) {
+			tester.printUsage();
+			return;
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
+		if (tester.prefetchDegree > 0 && !(args[0].equals("1") || args[0].equals("2"))) {
+			tester.printUsage(); // the adaptive and cluster tests do not prefetch
+			return;
+		}
 		if (args[0].equals("1")) {
 			tester.runTest(1, args[1], null, args[2]);
 		} else if (args[0].equals("2")) {
 			tester.runTest(2, args[1], args[2], args[3]);
+		} else if (args[0].equals("3")) {
+			tester.runTest(3, args[1], null, args[2]);
+		} else if (args[0].equals("4")) {
+			tester.runClusterTest(args[1], args[2], args[3]);
 		} else {
 			tester.printUsage();
 		}
 	}
 	
+	/**
+     * Parses the options that precede the test number.
+     *
+     * @param args Command-line arguments.
+     * @return The index of the first argument after the options, or -1 if an option is invalid.
+     */
+	private int parseOptions(String[] args) {
+		int i = 0;
+		try {
+			while (i < args.length && args[i].startsWith("-")) {
+				if (args[i].equals("-p")) {
+					prefetchDegree = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-f")) {
+					usePipeline = true;
+				} else if (args[i].equals("-o")) {
+					useOverflow = true;
+				} else if (args[i].equals("-z")) {
+					compressedEntries = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-i")) {
+					intervalReferences = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-t")) {
+					intervalMillis = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-j")) {
+					intervalJson = true;
+				} else if (args[i].equals("-k")) {
+					reportTopWords = true;
+				} else {
+					return -1;
+				}
+				i++;
+			}
+		} catch (RuntimeException e) { // missing or malformed option value
+			return -1;
+		}
+		return i;
+	}
+	
 	/**
      * Runs a caching test based on the specified test number, cache sizes, and file name.
-     * Creates a first-level cache and optionally a second-level cache.
+     * Creates a first-level cache and optionally a second-level cache. Test 3 creates both
+     * levels from a single total size and lets an AdaptiveHierarchy choose the split.
      * Reads the specified file, updating the caches based on the test requirements.
      * Records and prints statistics such as execution time, number of references, cache hits, and hit ratio.
      *
-     * @param testNum    The test number (1 or 2) indicating the type of caching test to run.
-     * @param cacheSize  The size of the first-level cache.
+     * @param testNum    The test number (1, 2 or 3) indicating the type of caching test to run.
+     * @param cacheSize  The size of the first-level cache (the total size for test 3).
      * @param cache2Size The size of the second-level cache (for test 2 only).
      * @param fileName   The name of the file to process.
      */
@@ -51,15 +143,38 @@ public class Test {
 						String cache2Size,
 						String fileName) {
 		int size1 = Integer.parseInt(cacheSize);
-		Cache<String> cache = new Cache<String>(size1);
-		System.out.println("First level cache with " + cacheSize + " entries has been created");
+		Cache<String> cache;
 		Cache<String> cache2 = null;
+		AdaptiveHierarchy<String> hierarchy = null;
+		if (testNum == 3) {
+			// start with a quarter of the budget in the 1st level and let the hierarchy adapt
+			cache = reportTopWords ? new Cache<String>(1, TRACKED_WORDS) : new Cache<String>(1);
+			cache2 = new Cache<String>(1);
+			hierarchy = new AdaptiveHierarchy<String>(size1, size1 / 4, cache, cache2);
+			System.out.println("Adaptive two level cache with " + cacheSize + " total entries has been created"
+					+ "\n......................................");
+		} else {
+			cache = reportTopWords ? new Cache<String>(size1, TRACKED_WORDS) : new Cache<String>(size1);
+			System.out.println("First level cache with " + cacheSize + " entries has been created");
+		}
 		if (testNum == 2) {
 			int size2 = Integer.parseInt(cache2Size);
 			cache2 = new Cache<String>(size2);
 			System.out.println("Second level cache with " + cache2Size + " entries has been created"
 					+ "\n......................................");
 		}
+		if (compressedEntries > 0) {
+			cache.enableCompression(compressedEntries, Codec.UTF8);
+			if (cache2 != null) {
+				cache2.enableCompression(compressedEntries, Codec.UTF8);
+			}
+		}
+		if (useOverflow) {
+			cache.enableOverflow();
+			if (cache2 != null) {
+				cache2.enableOverflow();
+			}
+		}
 		File file = new File(fileName);
 		Scanner sc = null;
 		try {
@@ -70,40 +185,73 @@ public class Test {
 			System.exit(0);
 		}
 		
+		Prefetcher<String> prefetcher = null;
+		if (prefetchDegree > 0) {
+			prefetcher = new Prefetcher<String>(PREFETCH_TABLE_SIZE, prefetchDegree, size1);
+		}
+		
+		final Cache<String> level1 = cache;
+		final Cache<String> level2 = cache2;
+		final Prefetcher<String> prefetch = prefetcher;
+		ToIntFunction<String> lookup;
+		if (testNum == 3) {
+			lookup = hierarchy::search;
+		} else {
+			lookup = word -> reference(word, level1, level2, prefetch);
+		}
+		IntervalReporter reporter = null;
+		if (intervalReferences > 0 || intervalMillis > 0) {
+			reporter = new IntervalReporter(cache, cache2, intervalReferences, intervalMillis,
+					INTERVAL_WINDOW, intervalJson, System.out);
+			final IntervalReporter ticker = reporter;
+			final ToIntFunction<String> reportedLookup = lookup;
+			lookup = word -> {
+				int level = reportedLookup.applyAsInt(word);
+				ticker.tick();
+				return level;
+			};
+		}
+		
 		long startTime = System.currentTimeMillis();
-		if (testNum == 1) {
-			while (sc.hasNext()) {
-				String word = sc.next();
-				if (!cache.search(word)) {
-					cache.addObject(word);
-				}
+		TracePipeline pipeline = null;
+		long[] levelCounts; // references, 1st-level hits, 2nd-level hits
+		if (usePipeline) {
+			sc.close();
+			pipeline = new TracePipeline(fileName, lookup);
+			try {
+				pipeline.run();
+			} catch (IOException | InterruptedException e) {
+				System.out.println("Pipeline failed: " + e.getMessage());
+				return;
 			}
-		} else if (testNum == 2) {
+			levelCounts = pipeline.getLevelCounts();
+		} else {
+			long[] levels = new long[3];
 			while (sc.hasNext()) {
-				String word = sc.next();
-				if (!cache.search(word)) {
-					if (!cache2.search(word)) {
-						cache2.addObject(word);
-						cache.addObject(word);
-					} else {
-						cache.addObject(word);
-					}
-				} else {
-					cache2.moveToTop(word);
-				}
+				levels[lookup.applyAsInt(sc.next())]++;
 			}
+			levelCounts = new long[] {levels[0] + levels[1] + levels[2], levels[1], levels[2]};
 		}
 		long endTime = System.currentTimeMillis();
 		long totalTime = endTime - startTime;
+		if (reporter != null) {
+			reporter.finish();
+		}
 		
 		if (testNum == 1) {
 			System.out.println("Completed in " + totalTime + "ms");
-			System.out.println("\nNumber of references: " + cache.getNR()
-			+ "\nNumber of cache hits: " + cache.getNH()
-			+ "\nCache hit ratio: " + cache.getHR());
-		} else if (testNum == 2) {
-			int globalNR = cache.getNR();
-			int globalNH = cache.getNH() + cache2.getNH();
+			System.out.println("\nNumber of references: " + levelCounts[0]
+			+ "\nNumber of cache hits: " + levelCounts[1]
+			+ "\nCache hit ratio: " + (double) levelCounts[1] / (double) levelCounts[0]);
+			if (compressedEntries > 0) {
+				printCompressedStats("", cache);
+			}
+			if (useOverflow) {
+				printOverflowStats("", cache);
+			}
+		} else if (testNum == 2 || testNum == 3) {
+			long globalNR = levelCounts[0];
+			long globalNH = levelCounts[1] + levelCounts[2];
 			double globalHR = (double) globalNH / (double) globalNR;
 			System.out.println("Completed in " + totalTime + "ms");
 			System.out.println("\nNumber of references: " + globalNR
@@ -115,6 +263,286 @@ public class Test {
 			+ "\n\nNumber of 2nd-level references: " + cache2.getNR()
 			+ "\nNumber of 2nd-level cache hits: " + cache2.getNH()
 			+ "\n2nd-level cache hit ratio: " + cache2.getHR());
+			if (compressedEntries > 0) {
+				printCompressedStats("1st-level ", cache);
+				printCompressedStats("2nd-level ", cache2);
+			}
+			if (useOverflow) {
+				printOverflowStats("1st-level ", cache);
+				printOverflowStats("2nd-level ", cache2);
+			}
+		}
+		if (testNum == 3) {
+			System.out.println("\n\nFinal 1st-level cache size: " + hierarchy.getSize1()
+			+ "\nFinal 2nd-level cache size: " + hierarchy.getSize2()
+			+ "\nAverage 1st-level cache size: " + hierarchy.getAverageSize1()
+			+ "\nNumber of capacity shifts: " + hierarchy.getShifts());
+		}
+		if (prefetcher != null) {
+			printPrefetchStats(prefetcher);
+		}
+		if (pipeline != null) {
+			System.out.println("\n\nPipeline stage throughput:");
+			System.out.print(pipeline.getStageReport());
+		}
+		if (reportTopWords) {
+			printTopWords(cache);
+		}
+	}
+	
+	/**
+     * Looks up one word in a one or two-level cache hierarchy. A word that misses is inserted
+     * into every level it missed in; a 1st-level hit also makes the word the most recently used
+     * entry of the 2nd level.
+     *
+     * @param word       The word referenced.
+     * @param cache      The first-level cache.
+     * @param cache2     The second-level cache, or null for test 1.
+     * @param prefetcher The prefetcher to notify, or null if prefetching is disabled.
+     * @return 1 for a 1st-level hit, 2 for a 2nd-level hit, 0 for a miss.
+     */
+	private int reference(String word, Cache<String> cache, Cache<String> cache2, Prefetcher<String> prefetcher) {
+		int level;
+		boolean isHit = cache.search(word);
+		if (prefetcher != null) {
+			prefetcher.recordAccess(word, isHit);
+		}
+		if (isHit) {
+			level = 1;
+			if (cache2 != null) {
+				cache2.moveToTop(word);
+			}
+		} else if (cache2 == null) {
+			level = 0;
+			cache.addObject(word);
+		} else {
+			if (!cache2.search(word)) {
+				level = 0;
+				cache2.addObject(word);
+			} else {
+				level = 2;
+			}
+			cache.addObject(word);
+		}
+		if (prefetcher != null) {
+			prefetcher.prefetch(word, cache, cache2);
+		}
+		return level;
+	}
+	
+	/**
+     * Replays a file against a cluster of CacheNode processes on this machine. The nodes are
+     * started as child processes; all but the last join before the replay starts, the last
+     * one joins halfway through the file, and the first one leaves three-quarters of the way
+     * through, so that rebalancing is exercised both ways. Keys are sent in pipelined batches.
+     * Reports the overall hit ratio, the throughput of each node, and the throughput of each
+     * remaining node after the leave.
+     *
+     * @param nodeCount  The number of cache nodes to start.
+     * @param cacheSize  The size of each node's cache.
+     * @param fileName   The name of the file to process.
+     */
+	public void runClusterTest(String nodeCount, String cacheSize, String fileName) {
+		int count = Integer.parseInt(nodeCount);
+		File file = new File(fileName);
+		Scanner sc = null;
+		try {
+			sc = new Scanner(file);
+		} catch (FileNotFoundException e) {
+			System.out.println("File Not Found");
+			printUsage();
+			System.exit(0);
+		}
+		
+		List<Process> processes = new ArrayList<Process>();
+		int[] ports = new int[count];
+		ClusterClient client = new ClusterClient();
+		try {
+			for (int i = 0; i < count; i++) {
+				ProcessBuilder builder = new ProcessBuilder("java", "-cp", System.getProperty("java.class.path"),
+						"cache.CacheNode", cacheSize, "0");
+				builder.redirectErrorStream(true);
+				Process process = builder.start();
+				processes.add(process);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				String line = reader.readLine();
+				if (line == null || !line.startsWith(CacheNode.READY)) {
+					throw new IOException("cache node " + i + " did not start: " + line);
+				}
+				ports[i] = Integer.parseInt(line.substring(CacheNode.READY.length()).trim());
+			}
+			int joined = Math.max(1, count - 1);
+			for (int i = 0; i < joined; i++) {
+				client.addNode("node" + i, "localhost", ports[i]);
+			}
+			System.out.println("Cache cluster with " + joined + " nodes of " + cacheSize + " entries has been created"
+					+ "\n......................................");
+			
+			long halfway = file.length() / 2;
+			long threeQuarters = file.length() * 3 / 4;
+			String leftName = null;
+			long[] leftStats = null;
+			Map<String, long[]> statsAtLeave = new HashMap<String, long[]>();
+			long leaveTime = 0;
+			long consumed = 0;
+			long references = 0;
+			long hits = 0;
+			String[] batch = new String[CLUSTER_BATCH];
+			long startTime = System.currentTimeMillis();
+			while (sc.hasNext()) {
+				int n = 0;
+				while (n < CLUSTER_BATCH && sc.hasNext()) {
+					batch[n] = sc.next();
+					consumed += batch[n].length() + 1;
+					n++;
+				}
+				client.send(batch, n);
+				references += n;
+				if (client.pendingBatches() >= CLUSTER_PIPELINE) {
+					hits += countHits(client.receive());
+				}
+				if (joined < count && consumed >= halfway) {
+					while (client.pendingBatches() > 0) {
+						hits += countHits(client.receive());
+					}
+					int moved = client.addNode("node" + joined, "localhost", ports[joined]);
+					System.out.println("node" + joined + " joined after " + references + " references, "
+							+ moved + " keys moved");
+					joined++;
+				}
+				if (leftName == null && consumed >= threeQuarters && client.getNodeNames().size() > 1) {
+					while (client.pendingBatches() > 0) {
+						hits += countHits(client.receive());
+					}
+					List<String> names = client.getNodeNames();
+					List<long[]> stats = client.getNodeStats();
+					for (int i = 0; i < names.size(); i++) {
+						statsAtLeave.put(names.get(i), stats.get(i));
+					}
+					leftName = names.get(0);
+					leftStats = stats.get(0);
+					leaveTime = System.currentTimeMillis();
+					int moved = client.removeNode(0);
+					System.out.println(leftName + " left after " + references + " references, "
+							+ moved + " keys moved");
+				}
+			}
+			while (client.pendingBatches() > 0) {
+				hits += countHits(client.receive());
+			}
+			long endTime = System.currentTimeMillis();
+			long totalTime = Math.max(1, endTime - startTime);
+			
+			System.out.println("Completed in " + totalTime + "ms");
+			System.out.println("\nNumber of references: " + references
+			+ "\nNumber of cache hits: " + hits
+			+ "\nCache hit ratio: " + (double) hits / (double) references
+			+ "\nThroughput: " + (references * 1000 / totalTime) + " references/s");
+			if (leftName != null) {
+				long leftTime = Math.max(1, leaveTime - startTime);
+				System.out.println("\n" + leftName + " (left): " + leftStats[0] + " references, "
+				+ leftStats[1] + " hits, " + leftStats[2] + " entries when it left"
+				+ "\n" + leftName + " throughput: " + (leftStats[0] * 1000 / leftTime) + " references/s, "
+				+ "busy " + (leftStats[3] / 1000000) + "ms");
+			}
+			long afterLeaveTime = Math.max(1, endTime - leaveTime);
+			List<String> names = client.getNodeNames();
+			List<long[]> stats = client.getNodeStats();
+			for (int i = 0; i < names.size(); i++) {
+				long[] node = stats.get(i);
+				System.out.println("\n" + names.get(i) + ": " + node[0] + " references, "
+				+ node[1] + " hits, " + node[2] + " entries"
+				+ "\n" + names.get(i) + " throughput: " + (node[0] * 1000 / totalTime) + " references/s, "
+				+ "busy " + (node[3] / 1000000) + "ms");
+				if (leftName != null) {
+					long[] before = statsAtLeave.getOrDefault(names.get(i), new long[4]);
+					System.out.println(names.get(i) + " throughput after " + leftName + " left: "
+					+ ((node[0] - before[0]) * 1000 / afterLeaveTime) + " references/s, "
+					+ "busy " + ((node[3] - before[3]) / 1000000) + "ms");
+				}
+			}
+			client.close();
+		} catch (IOException e) {
+			System.out.println("Cluster test failed: " + e.getMessage());
+		} finally {
+			for (Process process : processes) {
+				process.destroy();
+			}
+		}
+	}
+	
+	/**
+     * Counts the hits in a batch of cluster lookups.
+     *
+     * @param batchHits hit flags of one batch.
+     * @return The number of hits.
+     */
+	private int countHits(boolean[] batchHits) {
+		int hits = 0;
+		for (boolean hit : batchHits) {
+			if (hit) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+	
+	/**
+     * Prints the hits served by a cache's compressed tier, its compression ratio, and how many
+     * entries fit in a megabyte of heap compressed compared to uncompressed (estimated).
+     *
+     * @param level The level name to prefix each line with.
+     * @param cache The cache whose compressed tier is reported.
+     */
+	private void printCompressedStats(String level, Cache<String> cache) {
+		double compressedEntry = cache.getCompressedBytesPerEntry();
+		double hotEntry = cache.getCompressedRawBytesPerEntry() + WORD_ENTRY_OVERHEAD;
+		System.out.println("\nNumber of " + level + "compressed tier hits: " + cache.getNCH()
+		+ "\nNumber of " + level + "compressed tier entries: " + cache.getCompressedSize()
+		+ "\n" + (level.isEmpty() ? "Compressed" : level + "compressed") + " tier compression ratio: "
+		+ cache.getCompressionRatio());
+		if (compressedEntry > 0) {
+			System.out.printf("Estimated entries per MB: %.0f uncompressed, %.0f compressed (%.2fx)%n",
+					1048576 / hotEntry, 1048576 / compressedEntry, hotEntry / compressedEntry);
+		}
+	}
+	
+	/**
+     * Prints the hits served by a cache's soft-reference overflow tier.
+     *
+     * @param level The level name to prefix each line with.
+     * @param cache The cache whose overflow tier is reported.
+     */
+	private void printOverflowStats(String level, Cache<String> cache) {
+		System.out.println("\nNumber of " + level + "overflow tier hits: " + cache.getNOH()
+		+ "\nNumber of " + level + "overflow tier entries: " + cache.getOverflowSize()
+		+ "\nNumber of " + level + "overflow tier entries cleared by the garbage collector: " + cache.getOverflowCleared()
+		+ "\n" + (level.isEmpty() ? "Cache " : level) + "hit ratio including overflow tier: " + cache.getTotalHR());
+	}
+	
+	/**
+     * Prints how effective the prefetcher was for the 1st-level cache.
+     *
+     * @param prefetcher The prefetcher used during the run.
+     */
+	private void printPrefetchStats(Prefetcher<String> prefetcher) {
+		System.out.println("\n\nNumber of prefetches: " + prefetcher.getIssued()
+		+ "\nNumber of useful prefetches: " + prefetcher.getUseful()
+		+ "\nPrefetch accuracy: " + prefetcher.getAccuracy()
+		+ "\nPrefetch coverage: " + prefetcher.getCoverage()
+		+ "\nMisses caused by prefetch pollution: " + prefetcher.getPollution());
+	}
+	
+	/**
+     * Prints the most referenced words seen by the given cache along with their counts.
+     * Counts are upper bounds; the true count is at least the reported lower bound.
+     *
+     * @param cache The cache that observed every reference.
+     */
+	private void printTopWords(Cache<String> cache) {
+		System.out.println("\n\nTop " + TOP_WORDS + " words (count (at least count - error)):");
+		for (HotKeyTracker.HotKey<String> word : cache.getHotKeys(TOP_WORDS)) {
+			System.out.println(word);
 		}
 	}
 	
@@ -122,8 +550,10 @@ public class Test {
      * Prints a usage message indicating the correct command-line arguments for running the program.
      */
 	private void printUsage() {
-		System.out.println("Usage: Java Test [test number (1 or 2)]"
-				+ " [1st-level cache size] [2nd-level cache size (for test 2 only)]"
-				+ " [file name]");
+		System.out.println("Usage: Java Test [-p prefetch degree (1-4, tests 1 and 2)] [-f (pipelined replay)] [-o (soft overflow tier)] [-z compressed tier entries]"
+				+ " [-i interval references] [-t interval ms] [-j (JSON intervals)] [-k (top words)] [test number (1, 2 or 3)]"
+				+ " [1st-level cache size (total size for test 3)] [2nd-level cache size (for test 2 only)]"
+				+ " [file name]"
+				+ "\n       Java Test 4 [number of cache nodes] [cache size per node] [file name]");
 	}
 }
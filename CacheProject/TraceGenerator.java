@@ -0,0 +1,338 @@
+package cache;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.SplittableRandom;
+
+/**
+ * This class generates synthetic reference traces for testing caches under controlled access
+ * patterns. A trace is a sequence of keys drawn from a universe of N keys by one of these patterns:
+ *  zipf    - key ranks follow a Zipf distribution with a configurable skew (0 is uniform, about 1 is typical)
+ *  uniform - every key is equally likely
+ *  scan    - keys in order, wrapping around the universe (defeats LRU once N exceeds the cache)
+ *  loop    - the same L keys over and over in order (all hits if L fits in the cache, none otherwise)
+ *  mixed   - phases of P references that cycle through zipf, scan, loop and uniform, moving the hot
+ *            keys to a different part of the universe at every phase
+ * Generation is deterministic: the same seed and settings always produce the same trace.
+ * Traces are written as text, where key i is the word "k" followed by i, so Test can replay them
+ * directly, or as binary: a header (magic, version, key count, reference count) followed by one
+ * big-endian int per reference. Counts are longs, and output goes through a fixed buffer, so
+ * traces of billions of references are written in constant memory.
+ *
+ * @author Andrew Kobus
+ * @see Test
+ *
+ */
+public class TraceGenerator {
+	/** first int of a binary trace: "CTRC" */
+	public static final int MAGIC = 0x43545243;
+	/** binary trace format version */
+	public static final int VERSION = 1;
+	/** bytes of a binary trace header: magic, version, key count and reference count */
+	public static final int HEADER_BYTES = 20;
+	/** words per line of a text trace */
+	private static final int WORDS_PER_LINE = 16;
+	/** size of the output buffer */
+	private static final int BUFFER_BYTES = 1 << 16;
+	/** patterns the mixed pattern cycles through */
+	private static final String[] PHASES = {"zipf", "scan", "loop", "uniform"};
+
+	private final SplittableRandom random;
+	private final int keys;
+	private final double skew;
+	private final int loopLength;
+	private final long phaseLength;
+	private Pattern pattern;
+
+	/**
+     * Constructs a TraceGenerator.
+     *
+     * @param pattern zipf, uniform, scan, loop or mixed.
+     * @param keys Number of distinct keys.
+     * @param skew Zipf exponent (zipf and mixed only).
+     * @param loopLength Number of keys in a loop (loop and mixed only).
+     * @param phaseLength References per phase (mixed only).
+     * @param seed Seed of the random number generator.
+     * @throws IllegalArgumentException if the pattern is unknown or a setting is out of range.
+     */
+	public TraceGenerator(String pattern, int keys, double skew, int loopLength, long phaseLength, long seed) {
+		if (keys < 1 || skew < 0 || loopLength < 1 || phaseLength < 1) {
+			throw new IllegalArgumentException("keys, loop length and phase length must be positive and skew not negative");
+		}
+		this.random = new SplittableRandom(seed);
+		this.keys = keys;
+		this.skew = skew;
+		this.loopLength = Math.min(loopLength, keys);
+		this.phaseLength = phaseLength;
+		this.pattern = pattern.equals("mixed") ? new Mixed() : create(pattern, 0);
+	}
+
+	/**
+     * Gets the next key of the trace.
+     *
+     * @return A key between 0 and the number of keys - 1.
+     */
+	public int next() {
+		return pattern.next();
+	}
+
+	/**
+     * Writes a trace to a file.
+     *
+     * @param fileName The file to write.
+     * @param references Number of references to write.
+     * @param binary true for the binary format, false for text.
+     * @throws IOException if the file cannot be written.
+     */
+	public void write(String fileName, long references, boolean binary) throws IOException {
+		try (FileChannel channel = new FileOutputStream(fileName).getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+			if (binary) {
+				buffer.putInt(MAGIC).putInt(VERSION).putInt(keys).putLong(references);
+			}
+			for (long i = 0; i < references; i++) {
+				if (buffer.remaining() < 16) { // room for "k", ten digits and a separator
+					drain(channel, buffer);
+				}
+				int key = next();
+				if (binary) {
+					buffer.putInt(key);
+				} else {
+					buffer.put((byte) 'k');
+					putDigits(buffer, key);
+					buffer.put((i % WORDS_PER_LINE == WORDS_PER_LINE - 1 || i == references - 1) ? (byte) '\n' : (byte) ' ');
+				}
+			}
+			drain(channel, buffer);
+		}
+	}
+
+	/**
+     * Writes the buffered bytes to the file and empties the buffer.
+     */
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+     * Writes a non-negative int in decimal without creating a String.
+     */
+	private static void putDigits(ByteBuffer buffer, int value) {
+		int start = buffer.position();
+		do {
+			buffer.put((byte) ('0' + value % 10));
+			value /= 10;
+		} while (value > 0);
+		for (int lo = start, hi = buffer.position() - 1; lo < hi; lo++, hi--) { // digits were written backwards
+			byte b = buffer.get(lo);
+			buffer.put(lo, buffer.get(hi));
+			buffer.put(hi, b);
+		}
+	}
+
+	/**
+     * Creates a simple (not mixed) pattern.
+     *
+     * @param name zipf, uniform, scan or loop.
+     * @param offset Key the hot part of the pattern starts at.
+     * @return The pattern.
+     */
+	private Pattern create(String name, final int offset) {
+		switch (name) {
+		case "zipf":
+			final Zipf zipf = new Zipf(keys, skew);
+			return () -> (int) ((zipf.sample(random) - 1 + offset) % keys);
+		case "uniform":
+			return () -> random.nextInt(keys);
+		case "scan":
+			return new Pattern() {
+				private int key = offset;
+
+				public int next() {
+					int next = key;
+					key = (key + 1 == keys) ? 0 : key + 1;
+					return next;
+				}
+			};
+		case "loop":
+			return new Pattern() {
+				private int step = 0;
+
+				public int next() {
+					int next = (int) (((long) offset + step) % keys);
+					step = (step + 1 == loopLength) ? 0 : step + 1;
+					return next;
+				}
+			};
+		default:
+			throw new IllegalArgumentException("unknown pattern: " + name);
+		}
+	}
+
+	/** Produces the keys of a trace. */
+	private interface Pattern {
+		int next();
+	}
+
+	/**
+     * Cycles through the PHASES, each for phaseLength references. Every phase starts its hot
+     * keys at a different offset, so what was hot in one phase is cold in the next.
+     */
+	private class Mixed implements Pattern {
+		private long remaining = 0;
+		private int phase = -1;
+		private Pattern current;
+
+		public int next() {
+			if (remaining == 0) {
+				phase++;
+				// a stride that is not a small fraction of the universe, so offsets do not repeat soon
+				int offset = (int) ((long) phase * (keys / 7 + 1) % keys);
+				current = create(PHASES[phase % PHASES.length], offset);
+				remaining = phaseLength;
+			}
+			remaining--;
+			return current.next();
+		}
+	}
+
+	/**
+     * Samples Zipf-distributed ranks 1..n in constant time and memory with rejection-inversion
+     * (W. Hormann and G. Derflinger, "Rejection-inversion to generate variates from monotone
+     * discrete distributions", 1996), so the key universe can be far larger than a probability table.
+     */
+	static class Zipf {
+		private final long n;
+		private final double exponent;
+		private final double hIntegralX1;
+		private final double hIntegralN;
+		private final double s;
+
+		Zipf(long n, double exponent) {
+			this.n = n;
+			this.exponent = exponent;
+			hIntegralX1 = hIntegral(1.5) - 1.0;
+			hIntegralN = hIntegral(n + 0.5);
+			s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+		}
+
+		/**
+         * Draws a rank.
+         *
+         * @param random The source of uniform numbers.
+         * @return A rank from 1 (most frequent) to n.
+         */
+		long sample(SplittableRandom random) {
+			while (true) {
+				double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+				double x = hIntegralInverse(u);
+				long k = (long) (x + 0.5);
+				if (k < 1) {
+					k = 1;
+				} else if (k > n) {
+					k = n;
+				}
+				if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+					return k;
+				}
+			}
+		}
+
+		/** @return the unnormalized probability x^-exponent */
+		private double h(double x) {
+			return Math.exp(-exponent * Math.log(x));
+		}
+
+		/** @return an antiderivative of h: (x^(1-exponent) - 1) / (1 - exponent), or log(x) for exponent 1 */
+		private double hIntegral(double x) {
+			double logX = Math.log(x);
+			return expm1OverX((1.0 - exponent) * logX) * logX;
+		}
+
+		/** @return the inverse of hIntegral */
+		private double hIntegralInverse(double x) {
+			double t = x * (1.0 - exponent);
+			if (t < -1.0) { // guards against rounding just below the domain
+				t = -1.0;
+			}
+			return Math.exp(log1pOverX(t) * x);
+		}
+
+		/** @return log(1 + x) / x, accurate near 0 */
+		private static double log1pOverX(double x) {
+			if (Math.abs(x) > 1e-8) {
+				return Math.log1p(x) / x;
+			}
+			return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+		}
+
+		/** @return (e^x - 1) / x, accurate near 0 */
+		private static double expm1OverX(double x) {
+			if (Math.abs(x) > 1e-8) {
+				return Math.expm1(x) / x;
+			}
+			return 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+		}
+	}
+
+	/**
+     * Generates a trace file from command-line arguments.
+     *
+     * @param args Options, the number of references and the file name.
+     */
+	public static void main(String[] args) {
+		String pattern = "zipf";
+		int keys = 100000;
+		double skew = 0.99;
+		int loopLength = 1000;
+		long phaseLength = 1000000;
+		long seed = 42;
+		boolean binary = false;
+		int i = 0;
+		try {
+			while (i < args.length && args[i].startsWith("-")) {
+				if (args[i].equals("-d")) {
+					pattern = args[++i];
+				} else if (args[i].equals("-k")) {
+					keys = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-a")) {
+					skew = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-l")) {
+					loopLength = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-m")) {
+					phaseLength = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-s")) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-b")) {
+					binary = true;
+				} else {
+					throw new IllegalArgumentException("unknown option: " + args[i]);
+				}
+				i++;
+			}
+			if (args.length - i != 2) {
+				throw new IllegalArgumentException("expected the number of references and a file name");
+			}
+			long references = Long.parseLong(args[i]);
+			TraceGenerator generator = new TraceGenerator(pattern, keys, skew, loopLength, phaseLength, seed);
+			long startTime = System.currentTimeMillis();
+			generator.write(args[i + 1], references, binary);
+			long totalTime = Math.max(1, System.currentTimeMillis() - startTime);
+			System.out.printf("Wrote %d %s references to %s in %dms (%.0f references/s)%n", references, pattern,
+					args[i + 1], totalTime, references * 1000.0 / totalTime);
+		} catch (IOException e) {
+			System.out.println("TraceGenerator failed: " + e.getMessage());
+		} catch (RuntimeException e) { // missing, malformed or out of range argument
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java cache.TraceGenerator [-d zipf | uniform | scan | loop | mixed] [-k keys]"
+					+ " [-a zipf skew] [-l loop length] [-m phase length (mixed)] [-s seed] [-b (binary)]"
+					+ " [number of references] [file name]");
+		}
+	}
+}
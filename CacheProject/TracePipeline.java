@@ -0,0 +1,291 @@
+package cache;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class replays a trace file through a pipeline of java.util.concurrent.Flow stages so that
+ * reading the file, splitting it into words and simulating the cache run at the same time:
+ *  read     - reads the file in blocks of characters cut at whitespace (the calling thread)
+ *  tokenize - splits blocks into chunks of words and interns the recently seen ones so equal
+ *             words share one String
+ *  lookup   - looks every word up in the cache hierarchy
+ *  stats    - counts references and hits per level
+ * Every stage runs on its own thread and hands chunks to the next stage through a bounded buffer.
+ * A stage only requests a new chunk once it has passed the previous one on, so a slow stage
+ * blocks the stages before it instead of letting buffers grow (backpressure).
+ * Each stage counts the elements it processed and the time it spent working, which is reported
+ * as per-stage throughput.
+ *
+ * @author Andrew Kobus
+ * @see Test
+ *
+ */
+public class TracePipeline {
+	/** characters per block handed from the read stage to the tokenize stage */
+	private static final int BLOCK_CHARS = 1 << 15;
+	/** words per chunk handed from the tokenize stage to the lookup stage */
+	private static final int WORDS_PER_CHUNK = 1024;
+	/** chunks each stage may buffer before its producer blocks */
+	private static final int BUFFER_CHUNKS = 32;
+	/** distinct words the tokenize stage keeps interned; the least recently seen are forgotten */
+	private static final int INTERNED_WORDS = 1 << 16;
+
+	private String fileName;
+	private Stage<String, String[]> tokenize;
+	private Stage<String[], byte[]> lookup;
+	private Stage<byte[], Void> stats;
+	private long readChars, readNanos;
+	private long[] levelCounts;
+	private CountDownLatch done;
+	private List<ExecutorService> executors;
+
+	/**
+     * Constructs a pipeline for the given file.
+     *
+     * @param fileName The trace file to replay.
+     * @param lookupFunction Looks up one word and returns the level that hit (1 or 2) or 0 for a miss.
+     */
+	public TracePipeline(String fileName, final ToIntFunction<String> lookupFunction) {
+		this.fileName = fileName;
+		levelCounts = new long[3];
+		done = new CountDownLatch(1);
+		executors = new ArrayList<ExecutorService>();
+
+		tokenize = new Stage<String, String[]>("tokenize", newExecutor()) {
+			private LinkedHashMap<String, String> interned = new LinkedHashMap<String, String>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > INTERNED_WORDS;
+				}
+			};
+
+			protected void process(String block) {
+				String[] words = new String[WORDS_PER_CHUNK];
+				int count = 0;
+				int i = 0;
+				int n = block.length();
+				while (i < n) {
+					while (i < n && Character.isWhitespace(block.charAt(i))) {
+						i++;
+					}
+					int start = i;
+					while (i < n && !Character.isWhitespace(block.charAt(i))) {
+						i++;
+					}
+					if (i > start) {
+						String word = block.substring(start, i);
+						String shared = interned.putIfAbsent(word, word);
+						words[count++] = (shared == null) ? word : shared;
+						if (count == WORDS_PER_CHUNK) {
+							emit(words);
+							words = new String[WORDS_PER_CHUNK];
+							count = 0;
+						}
+					}
+				}
+				if (count > 0) {
+					String[] last = new String[count];
+					System.arraycopy(words, 0, last, 0, count);
+					emit(last);
+				}
+			}
+
+			protected int elements(String block) {return block.length();}
+		};
+		lookup = new Stage<String[], byte[]>("lookup", newExecutor()) {
+			protected void process(String[] words) {
+				byte[] levels = new byte[words.length];
+				for (int i = 0; i < words.length; i++) {
+					levels[i] = (byte) lookupFunction.applyAsInt(words[i]);
+				}
+				emit(levels);
+			}
+
+			protected int elements(String[] words) {return words.length;}
+		};
+		stats = new Stage<byte[], Void>("stats", newExecutor()) {
+			protected void process(byte[] levels) {
+				for (byte level : levels) {
+					levelCounts[level]++;
+				}
+			}
+
+			protected int elements(byte[] levels) {return levels.length;}
+
+			public void onComplete() {
+				super.onComplete();
+				done.countDown();
+			}
+
+			public void onError(Throwable throwable) {
+				super.onError(throwable);
+				done.countDown();
+			}
+		};
+		tokenize.subscribe(lookup);
+		lookup.subscribe(stats);
+	}
+
+	/**
+     * Reads the whole file through the pipeline and waits until every stage has finished.
+     *
+     * @throws IOException if the file cannot be read.
+     * @throws InterruptedException if interrupted while waiting for the pipeline to drain.
+     */
+	public void run() throws IOException, InterruptedException {
+		SubmissionPublisher<String> read = new SubmissionPublisher<String>(newExecutor(), BUFFER_CHUNKS);
+		read.subscribe(tokenize);
+		try (Reader reader = new FileReader(fileName)) {
+			long start = System.nanoTime();
+			char[] buffer = new char[BLOCK_CHARS];
+			int filled = 0;
+			int n;
+			while ((n = reader.read(buffer, filled, buffer.length - filled)) != -1) {
+				filled += n;
+				// cut the block after its last whitespace so no word is split between blocks
+				int cut = filled;
+				while (cut > 0 && !Character.isWhitespace(buffer[cut - 1])) {
+					cut--;
+				}
+				if (cut == 0) {
+					if (filled < buffer.length) {
+						continue; // keep reading until the block contains a word boundary
+					}
+					cut = filled; // a single word longer than the block
+				}
+				read.submit(new String(buffer, 0, cut)); // blocks while the tokenize stage's buffer is full
+				readChars += cut;
+				System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+				filled -= cut;
+			}
+			if (filled > 0) {
+				read.submit(new String(buffer, 0, filled));
+				readChars += filled;
+			}
+			readNanos = System.nanoTime() - start;
+		} finally {
+			read.close();
+		}
+		done.await();
+		for (ExecutorService executor : executors) {
+			executor.shutdown();
+		}
+		if (stats.failure != null) {
+			throw new IOException("pipeline failed", stats.failure);
+		}
+	}
+
+	/** @return number of references, level 1 hits and level 2 hits counted by the stats stage */
+	public long[] getLevelCounts() {
+		return new long[] {levelCounts[0] + levelCounts[1] + levelCounts[2], levelCounts[1], levelCounts[2]};
+	}
+
+	/**
+     * Describes the throughput of every stage: elements processed (characters for read and
+     * tokenize, words for lookup and stats), elements per second of busy time, and busy time.
+     * The stage with the most busy time is the bottleneck.
+     *
+     * @return One line per stage.
+     */
+	public String getStageReport() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("%-9s %10d elements %12.0f elements/s  busy %dms%n", "read",
+				readChars, readChars * 1e9 / Math.max(1, readNanos), readNanos / 1000000));
+		for (Stage<?, ?> stage : new Stage<?, ?>[] {tokenize, lookup, stats}) {
+			str.append(stage.report());
+		}
+		return str.toString();
+	}
+
+	/**
+     * Creates a single-thread executor so every stage runs on its own daemon thread.
+     *
+     * @return A new executor owned by this pipeline.
+     */
+	private ExecutorService newExecutor() {
+		ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "trace-pipeline");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executors.add(executor);
+		return executor;
+	}
+
+	/**
+     * One pipeline stage: consumes chunks of type I, one at a time, and publishes chunks of type O.
+     *
+     * @param <I> type of chunk consumed
+     * @param <O> type of chunk produced (Void for the last stage, which produces nothing)
+     */
+	private static abstract class Stage<I, O> extends SubmissionPublisher<O> implements Flow.Processor<I, O> {
+		private final String name;
+		private Flow.Subscription subscription;
+		private long elements, chunks, busyNanos, waitNanos;
+		volatile Throwable failure;
+
+		Stage(String name, ExecutorService executor) {
+			super(executor, BUFFER_CHUNKS);
+			this.name = name;
+		}
+
+		/** Processes one chunk, passing any results on with {@link #emit(Object)}. */
+		protected abstract void process(I chunk);
+
+		/** @return number of elements (characters or words) in a chunk, for throughput reports */
+		protected abstract int elements(I chunk);
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		public void onNext(I chunk) {
+			long start = System.nanoTime();
+			process(chunk);
+			busyNanos += System.nanoTime() - start - waitNanos;
+			waitNanos = 0;
+			elements += elements(chunk);
+			chunks++;
+			subscription.request(1);
+		}
+
+		/**
+		 * Publishes a result to the next stage, blocking while its buffer is full.
+		 * Time spent blocked is not counted as busy time.
+		 */
+		protected void emit(O result) {
+			long start = System.nanoTime();
+			submit(result);
+			waitNanos += System.nanoTime() - start;
+		}
+
+		public void onError(Throwable throwable) {
+			failure = throwable;
+			closeExceptionally(throwable);
+		}
+
+		public void onComplete() {
+			close();
+		}
+
+		String report() {
+			return String.format("%-9s %10d elements %12.0f elements/s  busy %dms (%d chunks)%n", name,
+					elements, elements * 1e9 / Math.max(1, busyNanos), busyNanos / 1000000, chunks);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/**
+ * Finds one shortest trace on a CircuitBoard with a breadth-first search from both the
+ * starting and the ending component at once. Each step expands a whole layer of the
+ * smaller frontier, and the search stops after the layer in which the two searches
+ * first touch: the shortest trace through any of the cells where they touched is a
+ * shortest trace overall. It is rebuilt by splicing the parent chain from the starting
+ * side with the reversed parent chain from the ending side. Only the cells near a
+ * shortest trace are explored, instead of every cell up to the ending component's
+ * distance from the starting component.
+ *
+ * @author Andrew Kobus
+ */
+public class BidirectionalSearch {
+	private static final int FROM_START = 0, FROM_END = 1;
+
+	private final CircuitBoard board;
+	/** neighbor cell index offsets */
+	private final int[] neighbors;
+	/** per side: distance by cell index, the number of trace positions from the side's component, 0 if not reached */
+	private final int[][] distance;
+	/** per side: previous cell on the way to the side's component, -1 for the cells next to it */
+	private final int[][] parent;
+	/** per side: cells of the current layer, and the cells of the next one while it is built */
+	private final int[][] frontier;
+	private final int[][] nextFrontier;
+	private final int[] frontierSize;
+	/** cells taken off a frontier and expanded, both sides together */
+	private long cellsExpanded;
+
+	/** Set up a search of a board
+	 * @param board the board; positions traced on it are treated as occupied
+	 */
+	public BidirectionalSearch(CircuitBoard board) {
+		this.board = board;
+		int stride = board.cellStride();
+		neighbors = new int[] {1, stride, -1, -stride};
+		distance = new int[2][board.numCells()];
+		parent = new int[2][board.numCells()];
+		frontier = new int[2][board.numCells()];
+		nextFrontier = new int[2][board.numCells()];
+		frontierSize = new int[2];
+	}
+
+	/** Run the search
+	 * @return a shortest trace from the starting to the ending component, or null if there is none
+	 */
+	public TraceState search() {
+		seed(FROM_START, board.getStartingCell());
+		seed(FROM_END, board.getEndingCell());
+		int meeting = -1;
+		int best = Integer.MAX_VALUE;
+		// a cell next to both components is a trace by itself
+		for (int i = 0; i < frontierSize[FROM_START]; i++) {
+			if (distance[FROM_END][frontier[FROM_START][i]] > 0) {
+				meeting = frontier[FROM_START][i];
+				best = 1;
+			}
+		}
+		while (meeting < 0 && frontierSize[FROM_START] > 0 && frontierSize[FROM_END] > 0) {
+			int side = frontierSize[FROM_START] <= frontierSize[FROM_END] ? FROM_START : FROM_END;
+			int other = 1 - side;
+			int size = 0;
+			for (int i = 0; i < frontierSize[side]; i++) {
+				int cell = frontier[side][i];
+				cellsExpanded++;
+				for (int offset : neighbors) {
+					int next = cell + offset;
+					if (distance[side][next] == 0 && board.isOpenCell(next)) {
+						distance[side][next] = distance[side][cell] + 1;
+						parent[side][next] = cell;
+						nextFrontier[side][size++] = next;
+						// the trace through next has next counted on both sides
+						int length = distance[other][next] > 0 ? distance[side][next] + distance[other][next] - 1 : 0;
+						if (length > 0 && length < best) {
+							best = length;
+							meeting = next;
+						}
+					}
+				}
+			}
+			int[] swap = frontier[side];
+			frontier[side] = nextFrontier[side];
+			nextFrontier[side] = swap;
+			frontierSize[side] = size;
+		}
+		return meeting < 0 ? null : splice(meeting);
+	}
+
+	/** @return number of cells taken off a frontier and expanded, both sides together */
+	public long getCellsExpanded() {
+		return cellsExpanded;
+	}
+
+	/** @return number of cells reached by either side, the explored area */
+	public long getCellsReached() {
+		long reached = 0;
+		for (int cell = 0; cell < distance[FROM_START].length; cell++) {
+			if (distance[FROM_START][cell] > 0 || distance[FROM_END][cell] > 0) {
+				reached++;
+			}
+		}
+		return reached;
+	}
+
+	/**
+	 * Starts one side's search at the open cells next to its component.
+	 *
+	 * @param side FROM_START or FROM_END
+	 * @param component cell index of the side's component
+	 */
+	private void seed(int side, int component) {
+		Arrays.fill(parent[side], -1);
+		for (int offset : neighbors) {
+			int cell = component + offset;
+			if (board.isOpenCell(cell)) {
+				distance[side][cell] = 1;
+				frontier[side][frontierSize[side]++] = cell;
+			}
+		}
+	}
+
+	/**
+	 * Builds the trace through the cell where the two searches met.
+	 *
+	 * @param meeting cell index reached by both sides
+	 * @return the trace, from the cell next to the starting component to the cell next to the ending component
+	 */
+	private TraceState splice(int meeting) {
+		int[] cells = new int[distance[FROM_START][meeting] + distance[FROM_END][meeting] - 1];
+		int i = distance[FROM_START][meeting] - 1;
+		for (int cell = meeting; cell >= 0; cell = parent[FROM_START][cell]) {
+			cells[i--] = cell;
+		}
+		i = distance[FROM_START][meeting] - 1;
+		for (int cell = meeting; cell >= 0; cell = parent[FROM_END][cell]) {
+			cells[i++] = cell;
+		}
+		TraceState ts = new TraceState(board, board.cellRow(cells[0]), board.cellCol(cells[0]));
+		for (i = 1; i < cells.length; i++) {
+			ts = new TraceState(ts, board.cellRow(cells[i]), board.cellCol(cells[i]));
+		}
+		return ts;
+	}
+}
@@ -0,0 +1,141 @@
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Converts board files between the text format and a compact binary format, which
+ * CircuitBoard reads as well. A binary board is a header of eight big-endian ints (magic,
+ * version, rows, columns, starting row and column, ending row and column) followed by two
+ * bits per position in row order, four positions to a byte starting with the low bits:
+ *  0 an open position ('O')
+ *  1 an occupied position ('X')
+ *  2 the starting component ('1')
+ *  3 the ending component ('2')
+ * A position takes a quarter of a byte instead of the two of a text file, and a binary
+ * file is loaded without parsing any text.
+ *
+ * @author Andrew Kobus
+ */
+public class BoardConverter {
+	/** first int of a binary board: "CBRD" */
+	public static final int MAGIC = 0x43425244;
+	/** binary board format version */
+	public static final int VERSION = 1;
+	/** bytes of a binary board header */
+	public static final int HEADER_BYTES = 32;
+	/** position codes of a binary board */
+	public static final int OPEN = 0, CLOSED = 1, START = 2, END = 3;
+	/** size of the output buffer */
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	/**
+	 * Writes a board in the binary format.
+	 *
+	 * @param board the board; trace positions are written as open
+	 * @param fileName the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeBinary(CircuitBoard board, String fileName) throws IOException {
+		try (FileChannel channel = new FileOutputStream(fileName).getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(board.numRows()).putInt(board.numCols());
+			buffer.putInt(board.getStartingPoint().x).putInt(board.getStartingPoint().y);
+			buffer.putInt(board.getEndingPoint().x).putInt(board.getEndingPoint().y);
+			int packed = 0;
+			long position = 0;
+			int start = board.getStartingCell();
+			int end = board.getEndingCell();
+			for (int row = 0; row < board.numRows(); row++) {
+				for (int col = 0; col < board.numCols(); col++) {
+					int cell = board.cellIndex(row, col);
+					int code = cell == start ? START : cell == end ? END : board.charAt(row, col) == 'X' ? CLOSED : OPEN;
+					packed |= code << (2 * (position & 3));
+					if ((position & 3) == 3) {
+						putByte(channel, buffer, packed);
+						packed = 0;
+					}
+					position++;
+				}
+			}
+			if ((position & 3) != 0) {
+				putByte(channel, buffer, packed);
+			}
+			drain(channel, buffer);
+		}
+	}
+
+	/**
+	 * Writes a board in the text format, one row per line with the positions separated by spaces.
+	 *
+	 * @param board the board; trace positions are written as open
+	 * @param fileName the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeText(CircuitBoard board, String fileName) throws IOException {
+		try (FileChannel channel = new FileOutputStream(fileName).getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+			buffer.put((board.numRows() + " " + board.numCols() + "\n").getBytes());
+			for (int row = 0; row < board.numRows(); row++) {
+				for (int col = 0; col < board.numCols(); col++) {
+					char c = board.charAt(row, col);
+					putByte(channel, buffer, c == 'T' ? 'O' : c);
+					putByte(channel, buffer, col == board.numCols() - 1 ? '\n' : ' ');
+				}
+			}
+			drain(channel, buffer);
+		}
+	}
+
+	/**
+	 * Adds a byte to the buffer, writing the buffer to the file first if it is full.
+	 */
+	private static void putByte(FileChannel channel, ByteBuffer buffer, int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			drain(channel, buffer);
+		}
+		buffer.put((byte) b);
+	}
+
+	/**
+	 * Writes the buffered bytes to the file and empties the buffer.
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Converts a board file from command-line arguments.
+	 *
+	 * @param args -b to write binary or -t to write text, then the input and output file names;
+	 *  the input may be in either format
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3 || !(args[0].equals("-b") || args[0].equals("-t"))) {
+			System.out.println("Usage: java BoardConverter [-b binary output | -t text output] inputFile outputFile");
+			return;
+		}
+		try {
+			long startTime = System.currentTimeMillis();
+			CircuitBoard board = new CircuitBoard(args[1]);
+			if (args[0].equals("-b")) {
+				writeBinary(board, args[2]);
+			} else {
+				writeText(board, args[2]);
+			}
+			System.out.printf("Converted %dx%d board %s to %s in %dms%n", board.numRows(), board.numCols(),
+					args[1], args[2], System.currentTimeMillis() - startTime);
+		} catch (FileNotFoundException e) {
+			System.out.println("FileNotFoundException: " + e.getMessage());
+		} catch (InvalidFileFormatException e) {
+			System.out.println(e.getMessage());
+		} catch (IOException e) {
+			System.out.println("BoardConverter failed: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,392 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Scanner;
+
+/**
+ * Reads a board input file for CircuitBoard into the bitboard of open positions.
+ *
+ * Files are read with a byte-level parser over a memory-mapped view of the file, which
+ * checks every rule in a single pass and sets the bits of the open positions directly,
+ * without building a String per row. It only accepts the plain ASCII layout every board
+ * file uses. On the first byte it does not expect, whether the file is invalid or merely
+ * unusual (a sign on a number, a blank line, a byte order mark, trailing text after the
+ * dimensions), the file is read again with the original Scanner-based parser, so every
+ * file is accepted or rejected exactly as before, with the same exception and message.
+ *
+ * A file that starts with BoardConverter.MAGIC is in the binary format BoardConverter
+ * writes instead, and its two-bit positions are unpacked straight into the bitboard.
+ *
+ * @author Andrew Kobus
+ */
+class BoardParser {
+	private static final char OPEN = 'O'; //capital 'o'
+	private static final char CLOSED = 'X';
+	private static final char START = '1';
+	private static final char END = '2';
+	private static final String ALLOWED_CHARS = "OXT12";
+	/** open bits of the four positions of a binary board byte holding only open and occupied positions */
+	private static final long[] OPEN_BITS = new long[256];
+	static {
+		for (int packed = 0; packed < OPEN_BITS.length; packed++) {
+			for (int k = 0; k < 4; k++) {
+				if ((packed >> (2 * k) & 3) == BoardConverter.OPEN) {
+					OPEN_BITS[packed] |= 1L << k;
+				}
+			}
+		}
+	}
+
+	/** number of rows and columns */
+	int rows, cols;
+	/** open positions, one bit per cell index of a board with cols + 2 cells per row */
+	long[] open;
+	/** location of '1' and '2' */
+	int startRow, startCol, endRow, endCol;
+
+	/**
+	 * Reads a board input file.
+	 *
+	 * @param filename file containing a grid of characters
+	 * @return the parsed board
+	 * @throws FileNotFoundException if the file cannot be opened
+	 * @throws InvalidFileFormatException for any other format or content issue that prevents reading a valid input file
+	 */
+	static BoardParser parse(String filename) throws FileNotFoundException {
+		BoardParser board = new BoardParser();
+		try (FileInputStream in = new FileInputStream(filename); FileChannel channel = in.getChannel()) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (bytes.limit() >= 4 && bytes.getInt(0) == BoardConverter.MAGIC) {
+				board.parseBinary(bytes);
+				return board;
+			}
+			if (board.parseBytes(bytes)) {
+				return board;
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException | IllegalArgumentException e) { // unreadable, or too large to map
+			// let the Scanner report whatever it finds
+		}
+		board = new BoardParser();
+		board.parseWithScanner(filename);
+		return board;
+	}
+
+	/**
+	 * @param cells number of bits needed
+	 * @return number of longs holding that many bits
+	 */
+	private static int words(int cells) {
+		return (cells + 63) >>> 6;
+	}
+
+	/**
+	 * @param b a byte of the file
+	 * @return true for the whitespace, other than line terminators, that both parsers skip
+	 */
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+	}
+
+	/**
+	 * Parses a file in the binary format of BoardConverter.
+	 *
+	 * @param bytes contents of the file, starting with the magic number
+	 * @throws InvalidFileFormatException if the header or the positions are not a valid board
+	 */
+	private void parseBinary(MappedByteBuffer bytes) {
+		if (bytes.limit() < BoardConverter.HEADER_BYTES) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "Binary board header is truncated");
+		}
+		if (bytes.getInt(4) != BoardConverter.VERSION) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "Unsupported binary board version " + bytes.getInt(4));
+		}
+		rows = bytes.getInt(8);
+		cols = bytes.getInt(12);
+		startRow = bytes.getInt(16);
+		startCol = bytes.getInt(20);
+		endRow = bytes.getInt(24);
+		endCol = bytes.getInt(28);
+		if (rows < 0 || cols < 0) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "Binary board dimensions must not be negative");
+		}
+		int stride = cols + 2;
+		if ((long) (rows + 2) * stride > Integer.MAX_VALUE - 63) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "Binary board is too large");
+		}
+		long positions = (long) rows * cols;
+		if (bytes.limit() != BoardConverter.HEADER_BYTES + (positions + 3) / 4) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "Binary board length must match the specified number of rows and columns");
+		}
+		// the positions end part way through the last byte: its remaining bits must be zero
+		if ((positions & 3) != 0 && (bytes.get(bytes.limit() - 1) & 0xFF) >>> (2 * (positions & 3)) != 0) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "Binary board padding bits must be zero");
+		}
+		if (startRow < 0 || startRow >= rows || startCol < 0 || startCol >= cols
+				|| endRow < 0 || endRow >= rows || endCol < 0 || endCol >= cols) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "File must contain a starting point (1) and an ending point (2)");
+		}
+		open = new long[words((rows + 2) * stride)];
+		int starts = 0;
+		int ends = 0;
+		int p = BoardConverter.HEADER_BYTES;
+		int i = 0;
+		int j = 0;
+		int cell = stride + 1;
+		for (long position = 0; position < positions; position += 4) {
+			int packed = bytes.get(p++) & 0xFF;
+			if ((packed & 0xAA) == 0 && j + 4 <= cols) {
+				// four open or occupied positions in one row: set their open bits together
+				long mask = OPEN_BITS[packed];
+				open[cell >>> 6] |= mask << cell;
+				if ((cell & 63) > 60) {
+					open[(cell >>> 6) + 1] |= mask >>> (64 - (cell & 63));
+				}
+				j += 4;
+				cell += 4;
+				if (j == cols) {
+					i++;
+					j = 0;
+					cell = (i + 1) * stride + 1;
+				}
+			} else {
+				for (int k = 0; k < 4 && position + k < positions; k++, packed >>= 2) {
+					int code = packed & 3;
+					if (code == BoardConverter.OPEN) {
+						open[cell >>> 6] |= 1L << cell;
+					} else if (code == BoardConverter.START) {
+						if (i != startRow || j != startCol || starts++ > 0) {
+							throw new InvalidFileFormatException("InvalidFileFormatException: "
+									+ "File may only have 1 starting point");
+						}
+					} else if (code == BoardConverter.END) {
+						if (i != endRow || j != endCol || ends++ > 0) {
+							throw new InvalidFileFormatException("InvalidFileFormatException: "
+									+ "File may only have 1 ending point");
+						}
+					}
+					j++;
+					cell++;
+					if (j == cols) {
+						i++;
+						j = 0;
+						cell = (i + 1) * stride + 1;
+					}
+				}
+			}
+		}
+		if (starts == 0 || ends == 0) {
+			throw new InvalidFileFormatException("InvalidFileFormatException: "
+					+ "File must contain a starting point (1) and an ending point (2)");
+		}
+	}
+
+	/**
+	 * Parses a file whose bytes are all plain ASCII board characters and whitespace.
+	 *
+	 * @param bytes contents of the file
+	 * @return true if the file is a valid board; false if it must be read by the Scanner
+	 *  parser, which then decides whether it is valid
+	 */
+	private boolean parseBytes(MappedByteBuffer bytes) {
+		int n = bytes.limit();
+		int p = 0;
+		int[] dimensions = new int[2];
+		for (int k = 0; k < dimensions.length; k++) {
+			while (p < n && (isBlank(bytes.get(p)) || bytes.get(p) == '\n' || bytes.get(p) == '\r')) {
+				p++;
+			}
+			int start = p;
+			int value = 0;
+			while (p < n && bytes.get(p) >= '0' && bytes.get(p) <= '9' && p - start < 9) {
+				value = value * 10 + (bytes.get(p++) - '0');
+			}
+			// a number must be followed by whitespace, and nine digits always fit in an int
+			if (p == start || p == n || !(isBlank(bytes.get(p)) || bytes.get(p) == '\n' || bytes.get(p) == '\r')) {
+				return false;
+			}
+			dimensions[k] = value;
+		}
+		rows = dimensions[0];
+		cols = dimensions[1];
+		int stride = cols + 2;
+		if ((long) (rows + 2) * stride > Integer.MAX_VALUE - 63) {
+			return false;
+		}
+		// nothing but blanks may follow the dimensions on their line
+		while (p < n && isBlank(bytes.get(p))) {
+			p++;
+		}
+		p = endOfLine(bytes, p);
+		if (p < 0) {
+			return false;
+		}
+		open = new long[words((rows + 2) * stride)];
+		boolean foundStart = false;
+		boolean foundEnd = false;
+		for (int i = 0; i < rows; i++) {
+			if (p == n) {
+				return false; // missing row
+			}
+			int j = 0;
+			int cell = (i + 1) * stride + 1;
+			while (p < n) {
+				byte b = bytes.get(p);
+				if (b == '\n' || b == '\r') {
+					break;
+				}
+				p++;
+				if (isBlank(b)) {
+					continue;
+				}
+				if (j == cols) {
+					return false; // row too long
+				}
+				if (b == OPEN) {
+					open[cell >>> 6] |= 1L << cell;
+				} else if (b == START && !foundStart) {
+					foundStart = true;
+					startRow = i;
+					startCol = j;
+				} else if (b == END && !foundEnd) {
+					foundEnd = true;
+					endRow = i;
+					endCol = j;
+				} else if (b != CLOSED) {
+					return false; // invalid character or a second start or end
+				}
+				j++;
+				cell++;
+			}
+			if (j != cols) {
+				return false; // row too short
+			}
+			if (p < n) {
+				p = endOfLine(bytes, p);
+			}
+			if (i == rows - 1 && p < n) {
+				return false; // more lines than rows
+			}
+		}
+		return foundStart && foundEnd;
+	}
+
+	/**
+	 * @param bytes contents of the file
+	 * @param p position of a line terminator
+	 * @return position after it ("\r\n" counts as one), or -1 if there is no line terminator at p
+	 */
+	private static int endOfLine(MappedByteBuffer bytes, int p) {
+		if (p < bytes.limit() && bytes.get(p) == '\n') {
+			return p + 1;
+		} else if (p < bytes.limit() && bytes.get(p) == '\r') {
+			return (p + 1 < bytes.limit() && bytes.get(p + 1) == '\n') ? p + 2 : p + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses a file with a Scanner, line by line.
+	 *
+	 * @param filename file containing a grid of characters
+	 * @throws FileNotFoundException if Scanner cannot read the file
+	 * @throws InvalidFileFormatException for any other format or content issue that prevents reading a valid input file
+	 */
+	private void parseWithScanner(String filename) throws FileNotFoundException {
+		Scanner fileScan = new Scanner(new File(filename));
+		try {
+			rows = fileScan.nextInt();
+			cols = fileScan.nextInt();
+			if (rows < 0 || cols < 0) {
+				throw new NegativeArraySizeException(String.valueOf(rows < 0 ? rows : cols));
+			}
+			int stride = cols + 2;
+			if ((long) (rows + 2) * stride > Integer.MAX_VALUE - 63) {
+				throw new InvalidFileFormatException("InvalidFileFormatException: "
+						+ "Board is too large");
+			}
+			open = new long[words((rows + 2) * stride)];
+			// these values ensure only one start and end point exist on the board
+			boolean foundStart = false;
+			boolean foundEnd = false;
+
+			fileScan.nextLine(); // Consume newline char after reading COLS
+
+			// Populate board
+			for (int i = 0; i < rows; i++) {
+				String row = fileScan.nextLine();
+				// Remove all spaces from input line and add characters to array
+				char[] tokens = row.replaceAll("\\s+", "").toCharArray();
+
+				// Validate row length with given COLS value
+				if (tokens.length != cols) {
+					throw new InvalidFileFormatException("InvalidFileFormatException: "
+							+ "Row lengths must match the specified number of columns"); // a row is a different size than stated
+				}
+				if (fileScan.hasNextLine() && i == rows-1) {
+					throw new InvalidFileFormatException("InvalidFileFormatException: "
+							+ "Column lengths must match the specified number of rows"); // a column is a different length than stated
+				}
+
+				// Continue populate board
+				for (int j = 0; j < cols; j++) {
+					char character = tokens[j];
+					int cell = (i + 1) * stride + j + 1;
+					// add character to board if valid
+					if (character == OPEN) {
+						open[cell >>> 6] |= 1L << cell;
+					} else if (character != CLOSED && character != START && character != END) {
+						throw new InvalidFileFormatException("InvalidFileFormatException: "
+								+ "Only allowed characters are: " + ALLOWED_CHARS); // file contains invalid chars
+					}
+
+					// Check if character is a start or end position and initialize start/end locations
+					if (character == START) {
+						if (!foundStart) {
+							startRow = i;
+							startCol = j;
+						} else { // more than 1 starting point
+							throw new InvalidFileFormatException("InvalidFileFormatException: "
+									+ "File may only have 1 starting point");
+						}
+						foundStart = true;
+
+					} else if (character == END) {
+						if (!foundEnd) {
+							endRow = i;
+							endCol = j;
+						} else { // more than 1 ending point
+							throw new InvalidFileFormatException("InvalidFileFormatException: "
+									+ "File may only have 1 ending point");
+						}
+						foundEnd = true;
+					}
+				}
+			}
+			// Checks if both a starting point and an ending point exist
+			if (!foundStart || !foundEnd) {
+				throw new InvalidFileFormatException("InvalidFileFormatException: "
+						+ "File must contain a starting point (1) and an ending point (2)");
+			}
+		} catch (Exception e) {
+			if (e.getMessage() != null) {
+				throw new InvalidFileFormatException(e.getMessage());
+			} else {
+				throw new InvalidFileFormatException("InvalidFileFormatException");
+			}
+		} finally {
+			fileScan.close();
+		}
+	}
+}
@@ -1,16 +1,28 @@
 import java.awt.Point;
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
 
 /**
  * Represents a 2D circuit board as read from an input file.
+ * 
+ * The board is stored as two bitboards of one bit per cell: open positions, which never
+ * change after the file is read and are shared by every copy of a board, and trace positions,
+ * which each copy owns. Rows are padded with an always closed border column on each side and
+ * the board with a closed border row above and below, so the four neighbors of any position
+ * on the board can be tested without bounds checks. Positions can be addressed by cell index
+ * (see {@link #cellIndex(int, int)}); the neighbors of a cell are at cell - 1, cell + 1,
+ * cell - {@link #cellStride()} and cell + {@link #cellStride()}.
  *  
  * @author mvail
  */
 public class CircuitBoard {
-	/** current contents of the board */
-	private char[][] board;
+	/** open positions, one bit per cell; never modified after construction, so copies share it */
+	private final long[] open;
+	/** trace positions, one bit per cell */
+	private long[] trace;
+	/** cells per padded row */
+	private final int stride;
+	/** cell index of '1' and '2' */
+	private final int startCell, endCell;
 	/** location of row,col for '1' */
 	private Point startingPoint;
 	/** location of row,col for '2' */
@@ -24,7 +36,6 @@ public class CircuitBoard {
 	private final char TRACE = 'T';
 	private final char START = '1';
 	private final char END = '2';
-	private final String ALLOWED_CHARS = "OXT12";
 
 	/** Construct a CircuitBoard from a given board input file, where the first
 	 * line contains the number of rows and columns as ints and each subsequent
@@ -36,87 +47,25 @@ public class CircuitBoard {
 	 *  '2' second of two components needing to be connected
 	 *  'T' is not expected in input files - represents part of the trace
 	 *   connecting components 1 and 2 in the solution
+	 * The file may instead be a binary board written by BoardConverter.
 	 * 
 	 * @param filename
 	 * 		file containing a grid of characters
-	 * @throws FileNotFoundException if Scanner cannot read the file
+	 * @throws FileNotFoundException if the file cannot be opened
 	 * @throws InvalidFileFormatException for any other format or content issue that prevents reading a valid input file
 	 */
 	
 	public CircuitBoard(String filename) throws FileNotFoundException {
-		Scanner fileScan = new Scanner(new File(filename));
-		try {
-			ROWS = fileScan.nextInt();
-			COLS = fileScan.nextInt();
-			board = new char[ROWS][COLS];
-			// these values ensure only one start and end point exist on the board
-			boolean foundStart = false;
-			boolean foundEnd = false;
-			
-			fileScan.nextLine(); // Consume newline char after reading COLS
-			
-			// Populate board
-			for (int i = 0; i < ROWS; i++) {
-				String row = fileScan.nextLine();
-				// Remove all spaces from input line and add characters to array
-				char[] tokens = row.replaceAll("\\s+", "").toCharArray();
-				
-				// Validate row length with given COLS value
-				if (tokens.length != COLS) {
-					throw new InvalidFileFormatException("InvalidFileFormatException: "
-							+ "Row lengths must match the specified number of columns"); // a row is a different size than stated
-				}
-				if (fileScan.hasNextLine() && i == ROWS-1) {
-					throw new InvalidFileFormatException("InvalidFileFormatException: "
-							+ "Column lengths must match the specified number of rows"); // a column is a different length than stated
-				}
-				
-				// Continue populate board
-				for (int j = 0; j < COLS; j++) {
-					char character = tokens[j];
-					// add character to board if valid
-					if (character == OPEN || character == CLOSED || character == START || character == END) {
-						board[i][j] = character;
-					} else {
-						throw new InvalidFileFormatException("InvalidFileFormatException: "
-								+ "Only allowed characters are: " + ALLOWED_CHARS); // file contains invalid chars
-					}
-					
-					// Check if character is a start or end position and initialize start/end locations
-					if (character == START) {
-						if (!foundStart) {
-							startingPoint = new Point(i, j);
-						} else { // more than 1 starting point
-							throw new InvalidFileFormatException("InvalidFileFormatException: "
-									+ "File may only have 1 starting point");
-						}
-						foundStart = true;
-						
-					} else if (character == END) {
-						if (!foundEnd) {
-							endingPoint = new Point(i, j);
-						} else { // more than 1 ending point
-							throw new InvalidFileFormatException("InvalidFileFormatException: "
-									+ "File may only have 1 ending point");
-						}
-						foundEnd = true;
-					}
-				}
-			}
-			// Checks if both a starting point and an ending point exist
-			if (!foundStart || !foundEnd) {
-				throw new InvalidFileFormatException("InvalidFileFormatException: "
-						+ "File must contain a starting point (1) and an ending point (2)");
-			}
-		} catch (Exception e) {
-			if (e.getMessage() != null) {
-				throw new InvalidFileFormatException(e.getMessage());
-			} else {
-				throw new InvalidFileFormatException("InvalidFileFormatException");
-			}
-		} finally {
-			fileScan.close();
-		}
+		BoardParser board = BoardParser.parse(filename);
+		ROWS = board.rows;
+		COLS = board.cols;
+		stride = COLS + 2;
+		open = board.open;
+		trace = new long[open.length];
+		startingPoint = new Point(board.startRow, board.startCol);
+		endingPoint = new Point(board.endRow, board.endCol);
+		startCell = cellIndex(board.startRow, board.startCol);
+		endCell = cellIndex(board.endRow, board.endCol);
 	}
 	
 	/** Copy constructor - duplicates original board
@@ -124,32 +73,41 @@ public class CircuitBoard {
 	 * @param original board to copy
 	 */
 	public CircuitBoard(CircuitBoard original) {
-		board = original.getBoard();
+		open = original.open; // never modified, so it can be shared
+		trace = original.trace.clone();
+		stride = original.stride;
+		startCell = original.startCell;
+		endCell = original.endCell;
 		startingPoint = new Point(original.startingPoint);
 		endingPoint = new Point(original.endingPoint);
 		ROWS = original.numRows();
 		COLS = original.numCols();
 	}
 
-	/** utility method for copy constructor
-	 * @return copy of board array */
-	private char[][] getBoard() {
-		char[][] copy = new char[board.length][board[0].length];
-		for (int row = 0; row < board.length; row++) {
-			for (int col = 0; col < board[row].length; col++) {
-				copy[row][col] = board[row][col];
-			}
-		}
-		return copy;
-	}
-	
 	/** Return the char at board position x,y
 	 * @param row row coordinate
 	 * @param col col coordinate
 	 * @return char at row, col
+	 * @throws ArrayIndexOutOfBoundsException if the position is not on the board
 	 */
 	public char charAt(int row, int col) {
-		return board[row][col];
+		if (row < 0 || row >= ROWS) {
+			throw new ArrayIndexOutOfBoundsException("Index " + row + " out of bounds for length " + ROWS);
+		}
+		if (col < 0 || col >= COLS) {
+			throw new ArrayIndexOutOfBoundsException("Index " + col + " out of bounds for length " + COLS);
+		}
+		int cell = cellIndex(row, col);
+		if (bit(trace, cell)) {
+			return TRACE;
+		} else if (bit(open, cell)) {
+			return OPEN;
+		} else if (cell == startCell) {
+			return START;
+		} else if (cell == endCell) {
+			return END;
+		}
+		return CLOSED;
 	}
 	
 	/** Return whether given board position is open
@@ -158,10 +116,10 @@ public class CircuitBoard {
 	 * @return true if position at (row, col) is open 
 	 */
 	public boolean isOpen(int row, int col) {
-		if (row < 0 || row >= board.length || col < 0 || col >= board[row].length) {
+		if (row < 0 || row >= ROWS || col < 0 || col >= COLS) {
 			return false;
 		}
-		return board[row][col] == OPEN;
+		return isOpenCell(cellIndex(row, col));
 	}
 	
 	/** Set given position to be a 'T'
@@ -171,12 +129,96 @@ public class CircuitBoard {
 	 */
 	public void makeTrace(int row, int col) {
 		if (isOpen(row, col)) {
-			board[row][col] = TRACE;
+			int cell = cellIndex(row, col);
+			trace[cell >>> 6] |= 1L << cell;
 		} else {
-			throw new OccupiedPositionException("row " + row + ", col " + col + "contains '" + board[row][col] + "'");
+			throw new OccupiedPositionException("row " + row + ", col " + col + "contains '" + charAt(row, col) + "'");
 		}
 	}
 	
+	/** Set given position back to open if it is a 'T', undoing makeTrace
+	 * @param row
+	 * @param col
+	 */
+	public void clearTrace(int row, int col) {
+		if (row >= 0 && row < ROWS && col >= 0 && col < COLS) {
+			clearTraceCell(cellIndex(row, col));
+		}
+	}
+	
+	/** Set the position at a cell index to be a 'T', without checks
+	 * @param cell cell index of an open position
+	 */
+	public void makeTraceCell(int cell) {
+		trace[cell >>> 6] |= 1L << cell;
+	}
+	
+	/** Set the position at a cell index back to open if it is a 'T', without bounds checks
+	 * @param cell cell index of a position on the board
+	 */
+	public void clearTraceCell(int cell) {
+		trace[cell >>> 6] &= ~(1L << cell);
+	}
+	
+	/** Return the cell index of a board position. Positions one row or column outside
+	 * the board also have a cell index, and are never open.
+	 * @param row row coordinate, from -1 to numRows()
+	 * @param col col coordinate, from -1 to numCols()
+	 * @return cell index of row, col
+	 */
+	public int cellIndex(int row, int col) {
+		return (row + 1) * stride + col + 1;
+	}
+	
+	/** @param cell cell index
+	 * @return row of the cell */
+	public int cellRow(int cell) {
+		return cell / stride - 1;
+	}
+	
+	/** @param cell cell index
+	 * @return column of the cell */
+	public int cellCol(int cell) {
+		return cell % stride - 1;
+	}
+	
+	/** @return difference between the cell indexes of vertically adjacent positions */
+	public int cellStride() {
+		return stride;
+	}
+	
+	/** @return number of cell indexes, including the border */
+	public int numCells() {
+		return (ROWS + 2) * stride;
+	}
+	
+	/** Return whether the position at a cell index is open, without bounds checks
+	 * @param cell cell index of a position on the board or its border
+	 * @return true if the position is open
+	 */
+	public boolean isOpenCell(int cell) {
+		return ((open[cell >>> 6] & ~trace[cell >>> 6]) & (1L << cell)) != 0;
+	}
+	
+	/** @return cell index of the starting point */
+	public int getStartingCell() {
+		return startCell;
+	}
+	
+	/** @return cell index of the ending point */
+	public int getEndingCell() {
+		return endCell;
+	}
+	
+	/**
+	 * @param bits a bitboard
+	 * @param cell cell index
+	 * @return true if the cell's bit is set
+	 */
+	private static boolean bit(long[] bits, int cell) {
+		return (bits[cell >>> 6] & (1L << cell)) != 0;
+	}
+	
 	/** @return starting Point(row,col) */
 	public Point getStartingPoint() {
 		return new Point(startingPoint);
@@ -202,9 +244,9 @@ public class CircuitBoard {
 	 */
 	public String toString() {
 		StringBuilder str = new StringBuilder();
-		for (int row = 0; row < board.length; row++) {
-			for (int col = 0; col < board[row].length; col++) {
-				str.append(board[row][col] + " ");
+		for (int row = 0; row < ROWS; row++) {
+			for (int col = 0; col < COLS; col++) {
+				str.append(charAt(row, col)).append(' ');
 			}
 			str.append("\n");
 		}
@@ -1,24 +1,99 @@
 import java.awt.Point;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Search for shortest paths between start and end points on a circuit board
  * as read from an input file using either a stack or queue as the underlying
  * search state storage structure and displaying output to the console or to
  * a GUI according to options specified via command-line arguments.
+ * With the distance field option, a DistanceField is computed first and only
+ * paths that get one step closer to the end point with every step are
+ * explored, so exactly the shortest paths are generated and nothing else.
+ * The count option only reports the length and the number of shortest paths,
+ * which are computed from the DistanceField without generating any path.
+ * Once a path has been found, states that cannot lead to a path as short are
+ * discarded: the length of a state plus a lower bound on the distance that is
+ * left (Manhattan distance, or the exact distance with the -e option) must not
+ * exceed the length of the best path found so far.
+ * The A* option retrieves states from a priority queue in order of that same
+ * estimate, so the shortest paths are found before anything longer is explored.
+ * The parallel option runs the same pruned depth-first search on one thread per
+ * processor, each with its own deque of states that idle threads steal from.
+ * The bidirectional option only finds one shortest path, with a breadth-first
+ * search from both the start and the end point that stops where they meet.
+ * The iterative deepening option runs depth-first searches bounded by the same
+ * estimate as A*, raising the bound until it reaches the shortest length, on a
+ * single board where trace positions are made and cleared in place, so memory
+ * is proportional to the path length instead of the frontier size.
+ * With the -m option, stack, queue and distance field searches keep a bounded
+ * part of their frontier in memory and spill the rest to temporary files.
  * 
  * @author mvail
  */
 public class CircuitTracer {
 	private static enum outputTypes {console, gui};
 	private static outputTypes outputType;
+	/** expanded states between two Flight Recorder samples of the frontier size */
+	static final int FRONTIER_SAMPLE_INTERVAL = 1024;
+	/** printed paths between two checks that the console output is still open */
+	private static final int OUTPUT_CHECK_INTERVAL = 1024;
+	/** states per segment of the frontier written to disk with the -m option */
+	private static final int SPILL_SEGMENT_STATES = 1 << 16;
 	private Storage<TraceState> storage;
+	private String storageName;
 	private ArrayList<TraceState> bestPaths;
+	/** true if the storage retrieves complete paths in order of increasing length */
+	private boolean ordered;
+	/** true if the storage retrieves states in order of estimated length instead of length */
+	private boolean byEstimate;
+	/** true to run the search on several threads with a ParallelSearch */
+	private boolean parallel;
+	/** search for one shortest path from both ends, or null for the other options */
+	private BidirectionalSearch bidirectionalSearch;
+	/** iterative deepening search, or null for the other options */
+	private IterativeDeepeningSearch deepeningSearch;
+	/** true once search() has run */
+	private boolean searched;
+	private long statesExpanded;
+	private long statesPruned;
+	/** states left in a queue when the search stopped after the last layer that can hold a shortest path */
+	private long statesSkipped;
+	/** tasks one worker of a parallel search took from another */
+	private long steals;
+	/** length of the best path found so far, or 0 if none */
+	private int bestLength;
+	/** distances to the end point, or null to explore every path */
+	private DistanceField distanceField;
+	/** true to bound paths by their exact distance to the end point instead of the Manhattan distance */
+	private boolean exactBounds;
+	/** distances to the end point used as lower bounds, or null to use Manhattan distances */
+	private DistanceField boundField;
+	/** location of the end point */
+	private int endRow, endCol;
+	/** true to print search statistics after the paths */
+	private boolean verbose;
+	/** true to spill the frontier of stack and queue searches to disk */
+	private boolean spill;
 
 	/** launch the program
-	 * @param args three required arguments:
-	 *  first arg: -s for stack or -q for queue
+	 * @param args three required arguments, optionally preceded by
+	 *  -v to print search statistics, -e to prune (and estimate, for A*) with exact distances
+	 *  and -m to spill the frontier of stack, queue and distance field searches to disk:
+	 *  first arg: -s for stack, -q for queue, -a for A* priority queue, -d for distance field,
+	 *   -p for parallel search, -b for one path by bidirectional search, -i for iterative deepening
+	 *   or -n to count shortest paths
 	 *  second arg: -c for console output or -g for GUI output
 	 *  third arg: input file name 
 	 */
@@ -28,8 +103,10 @@ public class CircuitTracer {
 
 	/** Print instructions for running CircuitTracer from the command line. */
 	private void printUsage() {
-		System.out.println("Usage: java CircuitTracer [-s stack | -q queue] [-c console output | "
-				+ "-g GUI output] fileName (ex. inputFile.dat)");
+		System.out.println("Usage: java CircuitTracer [-v verbose statistics] [-e exact distance bounds] "
+				+ "[-m spill frontier to disk] "
+				+ "[-s stack | -q queue | -a A* priority queue | -d distance field | -p parallel search | -b one path by bidirectional search | -i iterative deepening | -n count shortest paths] "
+				+ "[-c console output | -g GUI output] fileName (ex. inputFile.dat)");
 	}
 	
 	/** 
@@ -39,17 +116,23 @@ public class CircuitTracer {
 	 * @param args command line arguments passed through from main()
 	 */
 	public CircuitTracer(String[] args) {
+		// Apply the optional modifiers before the three required args
+		int first = 0;
+		while (first < args.length
+				&& (args[first].equals("-v") || args[first].equals("-e") || args[first].equals("-m"))) {
+			verbose |= args[first].equals("-v");
+			exactBounds |= args[first].equals("-e");
+			spill |= args[first].equals("-m");
+			first++;
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
 		// Parse and validate command line args - first validation provided
 		if (args.length != 3) {
 			printUsage();
 			return; //exit the constructor immediately
 		}
 		// Initialize storage to use either a stack or a queue
-		if (args[0].equals("-s")) {
-			storage = Storage.getStackInstance();
-		} else if (args[0].equals("-q")) {
-			storage = Storage.getQueueInstance();
-		} else {
+		if (!selectStorage(args[0])) {
 			printUsage();
 			return;
 		}
@@ -69,8 +152,10 @@ public class CircuitTracer {
 		
 		// Read in the CircuitBoard from the given file
 		CircuitBoard startingBoard;
+		SearchPhaseEvent phase = beginPhase("load");
 		try {
 			startingBoard = new CircuitBoard(args[2]);
+			endPhase(phase);
 		} catch (FileNotFoundException e) {
 			System.out.println("FileNotFoundException: " + e.getMessage());
 			printUsage();
@@ -80,74 +165,551 @@ public class CircuitTracer {
 			return;
 		}
 		
+		// Count the shortest paths instead of generating them
+		if (args[0].equals("-n")) {
+			countShortestPaths(startingBoard);
+			return;
+		}
+		
 		// Create initial trace states
+		phase = beginPhase("search");
+		prepareSearch(startingBoard, args[0]);
+		
+		// Run the search for best paths, unless they can be generated while they are printed
+		if (!ordered) {
+			search();
+		}
+		endPhase(phase);
+
+		// Output results to console or GUI, according to specified choice
+		phase = beginPhase("output");
+		if (outputType == outputTypes.console) {
+			// Print all shortest paths as they are generated
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+			try {
+				Iterator<TraceState> paths = iterator();
+				long printed = 0;
+				while (paths.hasNext()) {
+					out.write(paths.next().getBoard().toString());
+					out.newLine();
+					// System.out hides write errors: stop once nobody reads the output
+					if (++printed % OUTPUT_CHECK_INTERVAL == 0 && System.out.checkError()) {
+						break;
+					}
+				}
+				out.flush();
+			} catch (IOException e) {
+				System.out.println("IOException: " + e.getMessage());
+			}
+		} else {
+			System.out.println("GUI is not currently supported");
+		}
+		endPhase(phase);
+		if (verbose) {
+			System.out.println("States expanded: " + statesExpanded);
+			System.out.println("States pruned: " + statesPruned);
+			System.out.println("States skipped: " + statesSkipped);
+			if (bidirectionalSearch != null) {
+				System.out.println("Cells reached: " + bidirectionalSearch.getCellsReached());
+			}
+			if (deepeningSearch != null) {
+				System.out.println("Iterations: " + deepeningSearch.getIterations());
+			}
+			if (parallel) {
+				System.out.println("Steals: " + steals);
+			}
+			if (spill && storage != null) {
+				System.out.println("Segments spilled: " + storage.getSegmentsSpilled());
+			}
+		}
+	}
+	
+	/**
+	 * Set up a search for the shortest paths on a board without running it. The paths are
+	 * generated by {@link #iterator()} or {@link #stream()}.
+	 * 
+	 * @param startingBoard the board to search
+	 * @param searchOption -s for stack, -q for queue, -a for A*, -d for distance field, -p for parallel
+	 *  -b for bidirectional or -i for iterative deepening
+	 * @throws IllegalArgumentException for any other search option
+	 */
+	public CircuitTracer(CircuitBoard startingBoard, String searchOption) {
+		this(startingBoard, searchOption, false, false);
+	}
+	
+	/**
+	 * Set up a search for the shortest paths on a board without running it, with the options
+	 * of -e and -m. The paths are generated by {@link #iterator()} or {@link #stream()}.
+	 * 
+	 * @param startingBoard the board to search
+	 * @param searchOption -s for stack, -q for queue, -a for A*, -d for distance field, -p for parallel
+	 *  -b for bidirectional or -i for iterative deepening
+	 * @param exactBounds true to prune (and estimate, for A*) with exact distances, as -e
+	 * @param spill true to spill the frontier of stack, queue and distance field searches to disk, as -m
+	 * @throws IllegalArgumentException for any other search option
+	 */
+	public CircuitTracer(CircuitBoard startingBoard, String searchOption, boolean exactBounds, boolean spill) {
+		this.exactBounds = exactBounds;
+		this.spill = spill;
+		if (searchOption.equals("-n") || !selectStorage(searchOption)) {
+			throw new IllegalArgumentException("unknown search option: " + searchOption);
+		}
+		bestPaths = new ArrayList<>();
+		prepareSearch(startingBoard, searchOption);
+	}
+	
+	/**
+	 * Initializes storage according to the search option.
+	 * 
+	 * @param searchOption -s, -q, -a, -d, -p, -b, -i or -n
+	 * @return true if the option is valid, else false
+	 */
+	private boolean selectStorage(String searchOption) {
+		if (searchOption.equals("-s")) {
+			storage = spill ? Storage.getSpillingStackInstance(new TraceState.Codec(), SPILL_SEGMENT_STATES)
+					: Storage.getStackInstance();
+			storageName = "stack";
+		} else if (searchOption.equals("-q")) {
+			storage = spill ? Storage.getSpillingQueueInstance(new TraceState.Codec(), SPILL_SEGMENT_STATES)
+					: Storage.getQueueInstance();
+			storageName = "queue";
+			ordered = true;
+		} else if (searchOption.equals("-a")) {
+			storage = Storage.getPriorityInstance(this::compareEstimates);
+			storageName = "priority";
+			ordered = true;
+			byEstimate = true;
+		} else if (searchOption.equals("-d")) {
+			// depth first keeps only one path's branches stored
+			storage = spill ? Storage.getSpillingStackInstance(new TraceState.Codec(), SPILL_SEGMENT_STATES)
+					: Storage.getStackInstance();
+			storageName = "distance field";
+			ordered = true;
+		} else if (searchOption.equals("-p")) {
+			storage = Storage.getStackInstance(); // only holds the initial states
+			storageName = "parallel";
+			parallel = true;
+		} else if (searchOption.equals("-b")) {
+			storageName = "bidirectional";
+		} else if (searchOption.equals("-i")) {
+			storageName = "iterative deepening";
+			ordered = true;
+		} else if (searchOption.equals("-n")) {
+			storageName = "count";
+		} else {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Stores the initial trace states, after computing the distance field if the search uses one.
+	 * 
+	 * @param startingBoard the board to search
+	 * @param searchOption -s, -q, -a, -d, -p, -b or -i
+	 */
+	private void prepareSearch(CircuitBoard startingBoard, String searchOption) {
+		if (searchOption.equals("-b")) {
+			bidirectionalSearch = new BidirectionalSearch(startingBoard);
+			return;
+		} else if (searchOption.equals("-i")) {
+			deepeningSearch = new IterativeDeepeningSearch(startingBoard,
+					exactBounds ? new DistanceField(startingBoard) : null);
+			return;
+		} else if (searchOption.equals("-d")) {
+			distanceField = new DistanceField(startingBoard);
+		} else if (exactBounds) {
+			boundField = new DistanceField(startingBoard);
+		}
+		Point end = startingBoard.getEndingPoint();
+		endRow = end.x;
+		endCol = end.y;
 		Point point = startingBoard.getStartingPoint();
 		TraceState ts = null;
-		if (startingBoard.isOpen(point.x+1, point.y)) {
+		if (startingBoard.isOpen(point.x+1, point.y) && worthExtending(point.x+1, point.y, 0)) {
 			ts = new TraceState(startingBoard, point.x+1, point.y);
 			storage.store(ts);
 		}
-		if (startingBoard.isOpen(point.x, point.y+1)) {
+		if (startingBoard.isOpen(point.x, point.y+1) && worthExtending(point.x, point.y+1, 0)) {
 			ts = new TraceState(startingBoard, point.x, point.y+1);
 			storage.store(ts);
 		}
-		if (startingBoard.isOpen(point.x-1, point.y)) {
+		if (startingBoard.isOpen(point.x-1, point.y) && worthExtending(point.x-1, point.y, 0)) {
 			ts = new TraceState(startingBoard, point.x-1, point.y);
 			storage.store(ts);
 		}
-		if (startingBoard.isOpen(point.x, point.y-1)) {
+		if (startingBoard.isOpen(point.x, point.y-1) && worthExtending(point.x, point.y-1, 0)) {
 			ts = new TraceState(startingBoard, point.x, point.y-1);
 			storage.store(ts);
 		}
-		
-		// Run the search for best paths
-		search();
-
-		// Output results to console or GUI, according to specified choice
+	}
+	
+	/**
+	 * Returns the shortest paths one at a time. With a queue or a distance field, paths are
+	 * retrieved in order of increasing length, so each one is returned as soon as the search
+	 * reaches it and only the search frontier is kept in memory; with iterative deepening,
+	 * only the current path. With a stack or in parallel, a shorter path can turn up at any
+	 * time, so the whole search runs before the first path is returned. A bidirectional
+	 * search returns a single path.
+	 * The search can only be run once: call this method once per CircuitTracer.
+	 * 
+	 * @return iterator over the shortest paths
+	 */
+	public Iterator<TraceState> iterator() {
+		return new PathIterator();
+	}
+	
+	/**
+	 * Returns the shortest paths as a sequential stream, generated lazily as by {@link #iterator()}.
+	 * 
+	 * @return stream of the shortest paths
+	 */
+	public Stream<TraceState> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+	
+	/**
+	 * Computes and prints the length and the number of shortest paths, which takes time and
+	 * memory proportional to the board size however many paths there are.
+	 * 
+	 * @param startingBoard the board to search
+	 */
+	private void countShortestPaths(CircuitBoard startingBoard) {
+		SearchPhaseEvent phase = beginPhase("search");
+		DistanceField field = new DistanceField(startingBoard);
+		BigInteger count = field.countShortestPaths();
+		endPhase(phase);
 		if (outputType == outputTypes.console) {
-			if (!bestPaths.isEmpty()) {
-				// Print all shortest paths
-				for (int i = 0; i < bestPaths.size(); i++) {
-					System.out.println(bestPaths.get(i).getBoard().toString());
-				}
+			if (field.getShortestLength() == 0) {
+				System.out.println("No path connects the start and end points");
+			} else {
+				System.out.println("Shortest path length: " + field.getShortestLength());
+				System.out.println("Number of shortest paths: " + count);
 			}
 		} else {
 			System.out.println("GUI is not currently supported");
 		}
 	}
 	
+	/**
+	 * Starts timing a phase of the run for Flight Recorder.
+	 * 
+	 * @param name load, search or output
+	 * @return the started event, or null if the event is not enabled
+	 */
+	private SearchPhaseEvent beginPhase(String name) {
+		if (!SearchPhaseEvent.TYPE.isEnabled()) {
+			return null;
+		}
+		SearchPhaseEvent event = new SearchPhaseEvent();
+		event.phase = name;
+		event.storage = storageName;
+		event.begin();
+		return event;
+	}
+	
+	/**
+	 * Ends and commits a phase started by {@link #beginPhase(String)}.
+	 * 
+	 * @param event the phase's event, or null if the event is not enabled
+	 */
+	private void endPhase(SearchPhaseEvent event) {
+		if (event != null) {
+			event.statesExpanded = statesExpanded;
+			event.commit();
+		}
+	}
+	
 	public void search() {
+		if (parallel) {
+			searchInParallel();
+			return;
+		}
+		if (bidirectionalSearch != null) {
+			TraceState path = bidirectionalSearch.search();
+			if (path != null) {
+				bestPaths.add(path);
+				bestLength = path.pathLength();
+				solutionFound(path, true, 1);
+			}
+			statesExpanded += bidirectionalSearch.getCellsExpanded();
+			searched = true;
+			return;
+		}
+		if (deepeningSearch != null) {
+			Iterator<TraceState> paths = iterator();
+			while (paths.hasNext()) {
+				bestPaths.add(paths.next());
+			}
+			searched = true;
+			return;
+		}
 		while (!storage.isEmpty()) {
 			TraceState ts = storage.retrieve();
-			if (ts.isComplete()) {
+			if (bestLength > 0 && estimate(ts) > bestLength) {
+				statesPruned++; // stored before a shorter path was found
+			} else if (ts.isComplete()) {
 				if (bestPaths.isEmpty() || ts.pathLength() == bestPaths.get(0).pathLength()) {
 					bestPaths.add(ts);
+					solutionFound(ts, bestPaths.size() == 1, bestPaths.size());
 				} else if (ts.pathLength() < bestPaths.get(0).pathLength()) {
 					bestPaths.clear();
 					bestPaths.add(ts);
+					solutionFound(ts, true, 1);
 				}
+				bestLength = bestPaths.get(0).pathLength();
 			} else {
-				generateTraceStates(ts);
+				expand(ts);
 			}
 		}
+		searched = true;
+	}
+	
+	/**
+	 * Runs the search on one thread per processor, starting from the initial states, and keeps
+	 * the shortest paths the threads found.
+	 */
+	private void searchInParallel() {
+		ArrayList<TraceState> roots = new ArrayList<TraceState>();
+		while (!storage.isEmpty()) {
+			roots.add(storage.retrieve());
+		}
+		ParallelSearch search = new ParallelSearch(roots, this::estimate, Runtime.getRuntime().availableProcessors());
+		try {
+			bestPaths.addAll(search.search());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // leave the paths empty: the search did not finish
+		}
+		if (!bestPaths.isEmpty()) {
+			bestLength = bestPaths.get(0).pathLength();
+		}
+		statesExpanded += search.getStatesExpanded();
+		statesPruned += search.getStatesPruned();
+		steals = search.getSteals();
+		searched = true;
+	}
+	
+	/** @return number of incomplete states extended by the search so far */
+	public long getStatesExpanded() {
+		return statesExpanded;
+	}
+	
+	/** @return number of states discarded because they could not lead to a shortest path */
+	public long getStatesPruned() {
+		return statesPruned;
+	}
+	
+	/** @return number of states never retrieved because a queue search stopped after the shortest paths' layer */
+	public long getStatesSkipped() {
+		return statesSkipped;
+	}
+	
+	/**
+	 * Returns a lower bound on the length of any complete path that extends a state.
+	 * 
+	 * @param ts the trace state
+	 * @return estimated length, or Integer.MAX_VALUE if the state cannot be completed
+	 */
+	private int estimate(TraceState ts) {
+		int bound = lowerBound(ts.getRow(), ts.getCol());
+		return bound == Integer.MAX_VALUE ? bound : ts.pathLength() - 1 + bound;
+	}
+	
+	/**
+	 * Orders states for A*: smallest estimated length first and, among equal estimates,
+	 * longest path first, since it is closest to being complete.
+	 * 
+	 * @param a a trace state
+	 * @param b another trace state
+	 * @return negative if a comes first, positive if b comes first, else 0
+	 */
+	private int compareEstimates(TraceState a, TraceState b) {
+		int result = Integer.compare(cachedEstimate(a), cachedEstimate(b));
+		return result != 0 ? result : Integer.compare(b.pathLength(), a.pathLength());
+	}
+	
+	/**
+	 * Returns the estimate of a state, computing it only the first time the state is compared.
+	 * 
+	 * @param ts the trace state
+	 * @return estimated length, or Integer.MAX_VALUE if the state cannot be completed
+	 */
+	private int cachedEstimate(TraceState ts) {
+		int estimate = ts.getEstimate();
+		if (estimate == 0) {
+			estimate = estimate(ts);
+			ts.setEstimate(estimate);
+		}
+		return estimate;
+	}
+	
+	/**
+	 * Returns a lower bound on the number of trace positions from a position to the end point,
+	 * the position included: its exact distance with the -e option, else its Manhattan distance.
+	 * 
+	 * @param row row of the position
+	 * @param col column of the position
+	 * @return lower bound, or Integer.MAX_VALUE if the end point cannot be reached from the position
+	 */
+	private int lowerBound(int row, int col) {
+		if (boundField != null) {
+			int distance = boundField.getDistance(row, col);
+			return distance == 0 ? Integer.MAX_VALUE : distance;
+		}
+		return Math.abs(row - endRow) + Math.abs(col - endCol);
+	}
+	
+	/**
+	 * Stores the extensions of a path and samples the frontier size for Flight Recorder.
+	 * 
+	 * @param ts the incomplete trace state to extend
+	 */
+	private void expand(TraceState ts) {
+		generateTraceStates(ts);
+		statesExpanded++;
+		if (statesExpanded % FRONTIER_SAMPLE_INTERVAL == 0 && FrontierSizeEvent.TYPE.isEnabled()) {
+			FrontierSizeEvent event = new FrontierSizeEvent();
+			event.frontierSize = storage.size();
+			event.statesExpanded = statesExpanded;
+			event.bestPathLength = bestLength;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Generates the shortest paths on demand. In order of increasing length, the first
+	 * complete path is a shortest path, and so is every later one of the same length.
+	 */
+	private class PathIterator implements Iterator<TraceState> {
+		/** next path to return, or null if it has not been found yet */
+		private TraceState next;
+		/** paths found by a full search, when paths are not retrieved in order */
+		private Iterator<TraceState> found;
+		private int count;
+		/** true once no shortest path is left */
+		private boolean finished;
+		
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+		
+		public TraceState next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TraceState path = next;
+			next = null;
+			return path;
+		}
+		
+		/** @return the next shortest path, or null if there are no more */
+		private TraceState advance() {
+			if (!ordered) {
+				if (found == null) {
+					if (!searched) {
+						search();
+					}
+					found = bestPaths.iterator();
+				}
+				return found.hasNext() ? found.next() : null;
+			}
+			if (deepeningSearch != null) {
+				TraceState ts = deepeningSearch.next();
+				statesExpanded = deepeningSearch.getStatesExpanded();
+				statesPruned = deepeningSearch.getStatesPruned();
+				if (ts != null) {
+					bestLength = ts.pathLength();
+					count++;
+					solutionFound(ts, count == 1, count);
+				}
+				return ts;
+			}
+			while (!finished && !storage.isEmpty()) {
+				TraceState ts = storage.retrieve();
+				if (bestLength > 0 && (byEstimate ? estimate(ts) : ts.pathLength()) > bestLength) {
+					// the layer of shortest paths is done, and every state left is longer
+					statesSkipped += storage.size() + 1;
+					finished = true;
+				} else if (bestLength > 0 && estimate(ts) > bestLength) {
+					statesPruned++;
+				} else if (ts.isComplete()) {
+					if (bestLength == 0 || ts.pathLength() == bestLength) {
+						bestLength = ts.pathLength();
+						count++;
+						solutionFound(ts, count == 1, count);
+						return ts;
+					}
+				} else {
+					expand(ts);
+				}
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Reports a new best (or equally short) path to Flight Recorder.
+	 * 
+	 * @param ts the complete trace state
+	 * @param improved true if it is shorter than every path found before it
+	 * @param count number of paths of its length found so far, itself included
+	 */
+	private void solutionFound(TraceState ts, boolean improved, int count) {
+		if (SolutionFoundEvent.TYPE.isEnabled()) {
+			SolutionFoundEvent event = new SolutionFoundEvent();
+			event.pathLength = ts.pathLength();
+			event.improved = improved;
+			event.bestPaths = count;
+			event.statesExpanded = statesExpanded;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Decides whether a path should be extended to a position. With a distance field, only a
+	 * position one step closer to the end point is worth it, so that the path stays a shortest
+	 * path. Without one, any position from which a path no longer than the best so far can
+	 * still be completed.
+	 * 
+	 * @param row row of the position
+	 * @param col column of the position
+	 * @param length length of the path before extending it
+	 * @return true if the extended path should be stored
+	 */
+	private boolean worthExtending(int row, int col, int length) {
+		if (distanceField != null) {
+			int distance = distanceField.getDistance(row, col);
+			return distance > 0 && distance == distanceField.getShortestLength() - length;
+		}
+		int bound = lowerBound(row, col);
+		if (bound == Integer.MAX_VALUE || (bestLength > 0 && length + bound > bestLength)) {
+			statesPruned++;
+			return false;
+		}
+		return true;
 	}
 	
 	private void generateTraceStates(TraceState prevTrace) {
 		Point point = new Point(prevTrace.getRow(), prevTrace.getCol()); // get last trace made
+		int length = prevTrace.pathLength();
 		TraceState newTrace = null;
-		if (prevTrace.isOpen(point.x+1, point.y)) {
+		if (prevTrace.isOpen(point.x+1, point.y) && worthExtending(point.x+1, point.y, length)) {
 			newTrace = new TraceState(prevTrace, point.x+1, point.y);
 			storage.store(newTrace);
 		}
-		if (prevTrace.isOpen(point.x, point.y+1)) {
+		if (prevTrace.isOpen(point.x, point.y+1) && worthExtending(point.x, point.y+1, length)) {
 			newTrace = new TraceState(prevTrace, point.x, point.y+1);
 			storage.store(newTrace);
 		}
-		if (prevTrace.isOpen(point.x-1, point.y)) {
+		if (prevTrace.isOpen(point.x-1, point.y) && worthExtending(point.x-1, point.y, length)) {
 			newTrace = new TraceState(prevTrace, point.x-1, point.y);
 			storage.store(newTrace);
 		}
-		if (prevTrace.isOpen(point.x, point.y-1)) {
+		if (prevTrace.isOpen(point.x, point.y-1) && worthExtending(point.x, point.y-1, length)) {
 			newTrace = new TraceState(prevTrace, point.x, point.y-1);
 			storage.store(newTrace);
 		}
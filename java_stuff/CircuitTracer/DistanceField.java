@@ -0,0 +1,135 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Distances from every open position of a CircuitBoard to the ending component, found
+ * with one breadth-first search from the ending component. The distance of a position is
+ * the number of trace positions on a shortest trace from it to the ending component,
+ * itself included: 1 next to the ending component, 0 if the ending component cannot be
+ * reached. A trace is a shortest trace exactly when every step goes to a position one
+ * closer, so the shortest traces can be enumerated by walking strictly decreasing
+ * distances from the starting component, and every such walk ends in a solution.
+ * The same property lets the shortest traces be counted without enumerating them.
+ *
+ * @author Andrew Kobus
+ */
+public class DistanceField {
+	private final CircuitBoard board;
+	/** distance by cell index, 0 where the ending component cannot be reached */
+	private final int[] distance;
+	/** length of the shortest traces, 0 if there are none */
+	private final int shortestLength;
+	/** cell indexes of the reachable positions in order of increasing distance */
+	private final int[] order;
+	/** neighbor cell index offsets */
+	private final int[] neighbors;
+
+	/** Compute the distance field of a board
+	 * @param board the board; positions traced on it are treated as occupied
+	 */
+	public DistanceField(CircuitBoard board) {
+		this.board = board;
+		distance = new int[board.numCells()];
+		int stride = board.cellStride();
+		neighbors = new int[] {1, stride, -1, -stride};
+		int[] queue = new int[board.numCells()];
+		int head = 0;
+		int tail = 0;
+		int end = board.getEndingCell();
+		for (int offset : neighbors) {
+			if (board.isOpenCell(end + offset)) {
+				distance[end + offset] = 1;
+				queue[tail++] = end + offset;
+			}
+		}
+		while (head < tail) {
+			int cell = queue[head++];
+			for (int offset : neighbors) {
+				int next = cell + offset;
+				if (distance[next] == 0 && board.isOpenCell(next)) {
+					distance[next] = distance[cell] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+		int start = board.getStartingCell();
+		int shortest = 0;
+		for (int offset : neighbors) {
+			int d = distance[start + offset];
+			if (d > 0 && (shortest == 0 || d < shortest)) {
+				shortest = d;
+			}
+		}
+		shortestLength = shortest;
+		order = Arrays.copyOf(queue, tail);
+	}
+
+	/** Return the distance of a position to the ending component
+	 * @param row row coordinate
+	 * @param col col coordinate
+	 * @return number of trace positions on a shortest trace from (row, col) to the ending
+	 *  component, or 0 if the position is not open or the ending component cannot be reached
+	 */
+	public int getDistance(int row, int col) {
+		if (row < 0 || row >= board.numRows() || col < 0 || col >= board.numCols()) {
+			return 0;
+		}
+		return distance[board.cellIndex(row, col)];
+	}
+
+	/** @return length of the shortest traces from the starting to the ending component, or 0 if there are none */
+	public int getShortestLength() {
+		return shortestLength;
+	}
+
+	/** Count the shortest traces from the starting to the ending component in time and memory
+	 * proportional to the board size. The number of shortest traces from a position is the sum
+	 * of the numbers from its neighbors one step closer, so the counts are accumulated in order
+	 * of increasing distance. Counts are kept as longs until one overflows, then as BigIntegers.
+	 * @return number of shortest traces, 0 if there are none
+	 */
+	public BigInteger countShortestPaths() {
+		long[] counts = new long[distance.length];
+		BigInteger[] bigCounts = null;
+		for (int i = 0; i < order.length; i++) {
+			int cell = order[i];
+			if (distance[cell] == 1) {
+				counts[cell] = 1;
+				continue;
+			}
+			if (bigCounts == null) {
+				try {
+					long sum = 0;
+					for (int offset : neighbors) {
+						if (distance[cell + offset] == distance[cell] - 1) {
+							sum = Math.addExact(sum, counts[cell + offset]);
+						}
+					}
+					counts[cell] = sum;
+					continue;
+				} catch (ArithmeticException e) { // too many for a long: continue with BigIntegers
+					bigCounts = new BigInteger[distance.length];
+					for (int j = 0; j < i; j++) {
+						bigCounts[order[j]] = BigInteger.valueOf(counts[order[j]]);
+					}
+				}
+			}
+			BigInteger sum = BigInteger.ZERO;
+			for (int offset : neighbors) {
+				if (distance[cell + offset] == distance[cell] - 1) {
+					sum = sum.add(bigCounts[cell + offset]);
+				}
+			}
+			bigCounts[cell] = sum;
+		}
+		BigInteger total = BigInteger.ZERO;
+		int start = board.getStartingCell();
+		for (int offset : neighbors) {
+			int next = start + offset;
+			if (shortestLength > 0 && distance[next] == shortestLength) {
+				total = total.add(bigCounts != null ? bigCounts[next] : BigInteger.valueOf(counts[next]));
+			}
+		}
+		return total;
+	}
+}
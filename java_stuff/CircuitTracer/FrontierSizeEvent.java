@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event sampling the size of the search frontier (the states waiting in
+ * storage) every {@link CircuitTracer#FRONTIER_SAMPLE_INTERVAL} expanded states.
+ * 
+ * @author Andrew Kobus
+ */
+@Name("CircuitTracer.FrontierSize")
+@Label("Frontier Size")
+@Category({"CircuitTracer"})
+@Description("Number of trace states waiting in storage during a search")
+class FrontierSizeEvent extends Event {
+	/** checked before creating an event, so sampling costs nothing while recording is off */
+	static final EventType TYPE = EventType.getEventType(FrontierSizeEvent.class);
+
+	@Label("Frontier Size")
+	int frontierSize;
+
+	@Label("States Expanded")
+	long statesExpanded;
+
+	@Label("Best Path Length")
+	@Description("Length of the shortest complete path found so far, or 0 if none")
+	int bestPathLength;
+}
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/**
+ * Finds the shortest traces on a CircuitBoard with iterative deepening A* (IDA*): a
+ * depth-first search that abandons a trace as soon as its length plus a lower bound on
+ * the distance left exceeds a threshold, repeated with the smallest estimate that
+ * exceeded it until some trace fits. The bound never decreases along a trace, so the
+ * first threshold at which a complete trace is found is the shortest length, and every
+ * trace completed in that iteration is a shortest trace.
+ *
+ * The search works on a single copy of the board: a trace position is made when the
+ * search steps onto it and cleared when it backs off, and the search stack only holds
+ * the cell index of each trace position and the next direction to try from it. Memory
+ * is therefore proportional to the trace length, however large the board or the number
+ * of traces. Positions near the ending component are revisited in every iteration,
+ * which is the price of not storing them.
+ *
+ * @author Andrew Kobus
+ */
+public class IterativeDeepeningSearch {
+	private final CircuitBoard startingBoard;
+	/** the board with the current trace made on it */
+	private final CircuitBoard board;
+	/** exact distances to the ending component, or null to use Manhattan distances */
+	private final DistanceField bounds;
+	/** neighbor cell index offsets */
+	private final int[] neighbors;
+	private final int endRow, endCol;
+	/** search stack: starting component, then the cell index of each trace position */
+	private int[] path;
+	/** index in neighbors of the next direction to try from each position of the stack */
+	private int[] tried;
+	/** top of the stack, which is also the current trace length; -1 when an iteration is over */
+	private int depth;
+	/** largest estimated length explored in the current iteration */
+	private int threshold;
+	/** smallest estimated length above the threshold, the next threshold */
+	private int nextThreshold;
+	/** true once a complete trace has been found, so the current iteration is the last */
+	private boolean found;
+	/** true once no trace is left */
+	private boolean finished;
+	private long statesExpanded;
+	private long statesPruned;
+	private int iterations;
+
+	/** Set up a search of a board
+	 * @param startingBoard the board; it is not modified
+	 * @param bounds exact distances to the ending component, or null to bound by Manhattan distance
+	 */
+	public IterativeDeepeningSearch(CircuitBoard startingBoard, DistanceField bounds) {
+		this.startingBoard = startingBoard;
+		this.bounds = bounds;
+		board = new CircuitBoard(startingBoard);
+		int stride = board.cellStride();
+		neighbors = new int[] {1, stride, -1, -stride};
+		endRow = board.getEndingPoint().x;
+		endCol = board.getEndingPoint().y;
+		path = new int[16];
+		tried = new int[16];
+		path[0] = board.getStartingCell();
+		depth = -1; // the first iteration, with threshold 0, only finds the first threshold
+		nextThreshold = 0;
+	}
+
+	/**
+	 * Continues the search up to the next shortest trace.
+	 *
+	 * @return the next shortest trace, or null if there are no more
+	 */
+	public TraceState next() {
+		while (!finished) {
+			if (depth < 0) {
+				if (found || nextThreshold == Integer.MAX_VALUE) {
+					finished = true;
+					break;
+				}
+				threshold = nextThreshold;
+				nextThreshold = Integer.MAX_VALUE;
+				iterations++;
+				depth = 0;
+				tried[0] = 0;
+				continue;
+			}
+			if (tried[depth] == neighbors.length) { // every direction tried: back off
+				if (depth > 0) {
+					board.clearTraceCell(path[depth]);
+				}
+				depth--;
+				continue;
+			}
+			int next = path[depth] + neighbors[tried[depth]++];
+			if (!board.isOpenCell(next)) {
+				continue;
+			}
+			int bound = lowerBound(next);
+			int estimate = bound == Integer.MAX_VALUE ? bound : depth + bound; // trace length depth + 1, minus 1
+			if (estimate > threshold) {
+				statesPruned++;
+				nextThreshold = Math.min(nextThreshold, estimate);
+			} else if (isComplete(next)) {
+				found = true;
+				return trace(next);
+			} else {
+				statesExpanded++;
+				board.makeTraceCell(next);
+				push(next);
+			}
+		}
+		return null;
+	}
+
+	/** @return number of trace positions stepped onto and extended, over all iterations */
+	public long getStatesExpanded() {
+		return statesExpanded;
+	}
+
+	/** @return number of positions not stepped onto because their estimate exceeded the threshold */
+	public long getStatesPruned() {
+		return statesPruned;
+	}
+
+	/** @return number of depth-first iterations run so far */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns a lower bound on the number of trace positions from a cell to the ending
+	 * component, the cell included.
+	 *
+	 * @param cell cell index of an open position
+	 * @return lower bound, or Integer.MAX_VALUE if the ending component cannot be reached
+	 */
+	private int lowerBound(int cell) {
+		int row = board.cellRow(cell);
+		int col = board.cellCol(cell);
+		if (bounds != null) {
+			int distance = bounds.getDistance(row, col);
+			return distance == 0 ? Integer.MAX_VALUE : distance;
+		}
+		return Math.abs(row - endRow) + Math.abs(col - endCol);
+	}
+
+	/**
+	 * @param cell cell index
+	 * @return true if the cell is next to the ending component
+	 */
+	private boolean isComplete(int cell) {
+		int distance = Math.abs(cell - board.getEndingCell());
+		return distance == 1 || distance == board.cellStride();
+	}
+
+	/**
+	 * Puts a trace position on top of the search stack, growing it if it is full.
+	 *
+	 * @param cell cell index of the position
+	 */
+	private void push(int cell) {
+		depth++;
+		if (depth == path.length) {
+			path = Arrays.copyOf(path, depth * 2);
+			tried = Arrays.copyOf(tried, depth * 2);
+		}
+		path[depth] = cell;
+		tried[depth] = 0;
+	}
+
+	/**
+	 * Builds the trace on the search stack, completed with one more position.
+	 *
+	 * @param last cell index of the position next to the ending component
+	 * @return the trace
+	 */
+	private TraceState trace(int last) {
+		TraceState ts = null;
+		for (int i = 1; i <= depth + 1; i++) {
+			int cell = i <= depth ? path[i] : last;
+			if (ts == null) {
+				ts = new TraceState(startingBoard, board.cellRow(cell), board.cellCol(cell));
+			} else {
+				ts = new TraceState(ts, board.cellRow(cell), board.cellCol(cell));
+			}
+		}
+		return ts;
+	}
+}
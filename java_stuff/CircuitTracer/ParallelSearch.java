@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Searches for all shortest paths with several threads on a ForkJoinPool. Every worker
+ * of the pool owns a work-stealing deque: it pushes and pops tasks at one end without
+ * contention, and idle workers steal from the other end, where the oldest tasks with
+ * the largest unexplored subtrees are. A task dives depth first from one trace state,
+ * always continuing with the extension that has the smallest estimated length and
+ * forking the others, so a worker's own search is the pruned depth-first search of -s
+ * and stolen tasks are the remaining siblings closest to the root. Tasks are counted
+ * completers, so the search ends when the last dive completes, and idle workers park
+ * inside the pool instead of spinning. The length of the best path found by any task
+ * is shared through an atomic integer and used to prune states whose estimated length
+ * exceeds it. Solutions are collected as they are found and filtered to the shortest
+ * length at the end.
+ *
+ * @author Andrew Kobus
+ */
+public class ParallelSearch {
+	private final List<TraceState> roots;
+	private final ToIntFunction<TraceState> estimate;
+	private final int threads;
+	/** length of the best path found by any task, Integer.MAX_VALUE until one is found */
+	private final AtomicInteger bestLength;
+	/** complete paths no longer than the best known when they were found */
+	private final ConcurrentLinkedQueue<TraceState> solutions;
+	private final LongAdder expanded, pruned;
+	private long steals;
+
+	/**
+	 * Set up a search.
+	 *
+	 * @param roots initial trace states
+	 * @param estimate lower bound on the length of any complete path extending a state
+	 *  (Integer.MAX_VALUE if it cannot be completed); called from every worker thread
+	 * @param threads number of worker threads
+	 */
+	public ParallelSearch(List<TraceState> roots, ToIntFunction<TraceState> estimate, int threads) {
+		this.roots = roots;
+		this.estimate = estimate;
+		this.threads = Math.max(1, threads);
+		bestLength = new AtomicInteger(Integer.MAX_VALUE);
+		solutions = new ConcurrentLinkedQueue<TraceState>();
+		expanded = new LongAdder();
+		pruned = new LongAdder();
+	}
+
+	/**
+	 * Runs the search on the worker threads and waits for it to finish.
+	 *
+	 * @return all shortest paths, or an empty list if there are none
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public List<TraceState> search() throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.submit(new Roots()).get();
+			steals = pool.getStealCount();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw (Error) e.getCause();
+		} finally {
+			pool.shutdownNow();
+		}
+		ArrayList<TraceState> best = new ArrayList<TraceState>();
+		for (TraceState ts : solutions) {
+			if (ts.pathLength() == bestLength.get()) {
+				best.add(ts);
+			}
+		}
+		return best;
+	}
+
+	/** @return number of incomplete states extended by all workers */
+	public long getStatesExpanded() {
+		return expanded.sum();
+	}
+
+	/** @return number of states discarded because they could not lead to a shortest path */
+	public long getStatesPruned() {
+		return pruned.sum();
+	}
+
+	/** @return number of tasks taken from another worker's deque */
+	public long getSteals() {
+		return steals;
+	}
+
+	/**
+	 * Lowers the shared best length to the given length if it is shorter.
+	 *
+	 * @param length length of a complete path
+	 */
+	private void offerBest(int length) {
+		int best = bestLength.get();
+		while (length < best && !bestLength.compareAndSet(best, length)) {
+			best = bestLength.get();
+		}
+	}
+
+	/**
+	 * @param length estimated length of the paths extending a state
+	 * @return true if the state cannot be completed into a path as short as the best so far
+	 */
+	private boolean hopeless(int length) {
+		return length == Integer.MAX_VALUE || length > bestLength.get();
+	}
+
+	/** Forks a dive from every initial state and completes once all of the dives have. */
+	private class Roots extends CountedCompleter<Void> {
+		private static final long serialVersionUID = 1L;
+
+		public void compute() {
+			for (TraceState root : roots) {
+				addToPendingCount(1);
+				new Dive(this, root).fork();
+			}
+			tryComplete();
+		}
+	}
+
+	/**
+	 * A depth-first dive from one trace state that forks every extension but the most
+	 * promising. It completes once it and all of the dives it forked have finished.
+	 */
+	private class Dive extends CountedCompleter<Void> {
+		private static final long serialVersionUID = 1L;
+		private final TraceState start;
+
+		Dive(CountedCompleter<?> parent, TraceState start) {
+			super(parent);
+			this.start = start;
+		}
+
+		public void compute() {
+			TraceState[] nextStates = new TraceState[4];
+			int[] nextEstimates = new int[4];
+			TraceState ts = start;
+			while (ts != null) {
+				ts = step(ts, nextStates, nextEstimates);
+			}
+			tryComplete();
+		}
+
+		/**
+		 * Records a complete path, or prunes or expands an incomplete one.
+		 *
+		 * @param ts the state the dive has reached
+		 * @param nextStates scratch space for the extensions of the state
+		 * @param nextEstimates scratch space for their estimates
+		 * @return the extension to continue the dive with, or null if the dive is over
+		 */
+		private TraceState step(TraceState ts, TraceState[] nextStates, int[] nextEstimates) {
+			if (hopeless(estimate.applyAsInt(ts))) {
+				pruned.increment();
+				return null;
+			}
+			if (ts.isComplete()) {
+				offerBest(ts.pathLength());
+				if (ts.pathLength() <= bestLength.get()) {
+					solutions.add(ts);
+				}
+				return null;
+			}
+			expanded.increment();
+			int row = ts.getRow();
+			int col = ts.getCol();
+			int children = 0;
+			children = extend(ts, row+1, col, nextStates, nextEstimates, children);
+			children = extend(ts, row, col+1, nextStates, nextEstimates, children);
+			children = extend(ts, row-1, col, nextStates, nextEstimates, children);
+			children = extend(ts, row, col-1, nextStates, nextEstimates, children);
+			if (children == 0) {
+				return null;
+			}
+			// fork the others worst first, so the next most promising one is popped first
+			for (int i = children - 1; i > 0; i--) {
+				addToPendingCount(1);
+				new Dive(this, nextStates[i]).fork();
+			}
+			return nextStates[0];
+		}
+
+		/**
+		 * Adds the extension of a path to a position to the extensions of a state, in order of
+		 * increasing estimate, if the position is open and the path can still lead to a
+		 * shortest path.
+		 *
+		 * @return the number of extensions now held
+		 */
+		private int extend(TraceState ts, int row, int col, TraceState[] nextStates, int[] nextEstimates, int children) {
+			if (ts.isOpen(row, col)) {
+				TraceState next = new TraceState(ts, row, col);
+				int length = estimate.applyAsInt(next);
+				if (hopeless(length)) {
+					pruned.increment();
+					return children;
+				}
+				int i = children++;
+				while (i > 0 && nextEstimates[i-1] > length) {
+					nextStates[i] = nextStates[i-1];
+					nextEstimates[i] = nextEstimates[i-1];
+					i--;
+				}
+				nextStates[i] = next;
+				nextEstimates[i] = length;
+			}
+			return children;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/** A Storage backed by a priority queue (a binary heap) that
+ *  retrieves the smallest element first.
+ *
+ *  @author Andrew Kobus
+ */
+public class PriorityStorage<T> implements Storage<T>
+{
+	private final PriorityQueue<T> priorityQueue;
+
+	/** Constructor
+	 * @param comparator order of the elements, smallest first
+	 */
+	public PriorityStorage(Comparator<? super T> comparator)
+	{
+		if (comparator == null) {
+			throw new IllegalArgumentException("a priority Storage needs a comparator");
+		}
+		priorityQueue = new PriorityQueue<T>(comparator);
+	}
+
+	public void store(T element)
+	{
+		priorityQueue.add(element);
+	}
+
+	public T retrieve()
+	{
+		return priorityQueue.remove();
+	}
+
+	public boolean isEmpty()
+	{
+		return priorityQueue.isEmpty();
+	}
+
+	public int size()
+	{
+		return priorityQueue.size();
+	}
+} // class PriorityStorage
@@ -0,0 +1,21 @@
+import java.util.NoSuchElementException;
+
+/** A RingBufferStorage that retrieves the oldest element first.
+ *
+ *  @author Andrew Kobus
+ */
+public final class RingBufferQueue<T> extends RingBufferStorage<T>
+{
+	@SuppressWarnings("unchecked")
+	public T retrieve()
+	{
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		T next = (T) elements[head];
+		elements[head] = null; // let the element be collected
+		head = (head + 1) & (elements.length - 1);
+		size--;
+		return next;
+	}
+} // class RingBufferQueue
@@ -0,0 +1,21 @@
+import java.util.NoSuchElementException;
+
+/** A RingBufferStorage that retrieves the newest element first.
+ *
+ *  @author Andrew Kobus
+ */
+public final class RingBufferStack<T> extends RingBufferStorage<T>
+{
+	@SuppressWarnings("unchecked")
+	public T retrieve()
+	{
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		int index = (head + size - 1) & (elements.length - 1);
+		T next = (T) elements[index];
+		elements[index] = null; // let the element be collected
+		size--;
+		return next;
+	}
+} // class RingBufferStack
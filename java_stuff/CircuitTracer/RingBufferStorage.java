@@ -0,0 +1,53 @@
+/** A Storage backed by a growable circular array. Storing an element
+ *  writes one array slot, with no node allocated per element and no
+ *  synchronization; the array doubles when it is full and is never
+ *  shrunk. RingBufferStack and RingBufferQueue supply the retrieval
+ *  order, so neither tests which end to take on every retrieve.
+ *
+ *  @author Andrew Kobus
+ */
+public abstract class RingBufferStorage<T> implements Storage<T>
+{
+	private static final int INITIAL_CAPACITY = 16;
+	/** the elements, oldest at head; the length is a power of two */
+	protected Object[] elements;
+	/** index of the oldest element */
+	protected int head;
+	protected int size;
+
+	/** Constructor */
+	protected RingBufferStorage()
+	{
+		elements = new Object[INITIAL_CAPACITY];
+	}
+
+	public void store(T element)
+	{
+		if (size == elements.length) {
+			grow();
+		}
+		elements[(head + size) & (elements.length - 1)] = element;
+		size++;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/** Doubles the array, moving the elements to its beginning in order */
+	private void grow()
+	{
+		Object[] larger = new Object[elements.length * 2];
+		int toEnd = elements.length - head;
+		System.arraycopy(elements, head, larger, 0, toEnd);
+		System.arraycopy(elements, 0, larger, toEnd, head);
+		elements = larger;
+		head = 0;
+	}
+} // class RingBufferStorage
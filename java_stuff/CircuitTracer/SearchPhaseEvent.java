@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event spanning one phase of a CircuitTracer run:
+ * load (reading the board), search, or output. With a queue or a distance field,
+ * paths are generated while they are printed, so the search work is in the output phase.
+ * 
+ * @author Andrew Kobus
+ */
+@Name("CircuitTracer.SearchPhase")
+@Label("Search Phase")
+@Category({"CircuitTracer"})
+@Description("One phase of a CircuitTracer run: load, search or output")
+class SearchPhaseEvent extends Event {
+	/** checked before creating an event, so phases are not timed while recording is off */
+	static final EventType TYPE = EventType.getEventType(SearchPhaseEvent.class);
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Storage")
+	@Description("The search storage: stack or queue")
+	String storage;
+
+	@Label("States Expanded")
+	long statesExpanded;
+}
@@ -0,0 +1,29 @@
+import java.util.NoSuchElementException;
+
+/** A SegmentedStorage that retrieves the oldest element first.
+ *
+ *  @author Andrew Kobus
+ */
+public final class SegmentedQueue<T> extends SegmentedStorage<T>
+{
+	@SuppressWarnings("unchecked")
+	public T retrieve()
+	{
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		Object[] chunk = chunks.peekFirst();
+		T next = (T) chunk[first];
+		chunk[first++] = null; // let the element be collected
+		size--;
+		if (size == 0) {
+			chunks.clear();
+			spare = chunk;
+		} else if (first == CHUNK_SIZE) {
+			chunks.removeFirst();
+			spare = chunk;
+			first = 0;
+		}
+		return next;
+	}
+} // class SegmentedQueue
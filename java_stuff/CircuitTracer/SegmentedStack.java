@@ -0,0 +1,29 @@
+import java.util.NoSuchElementException;
+
+/** A SegmentedStorage that retrieves the newest element first.
+ *
+ *  @author Andrew Kobus
+ */
+public final class SegmentedStack<T> extends SegmentedStorage<T>
+{
+	@SuppressWarnings("unchecked")
+	public T retrieve()
+	{
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		Object[] chunk = chunks.peekLast();
+		T next = (T) chunk[--last];
+		chunk[last] = null; // let the element be collected
+		size--;
+		if (size == 0) {
+			chunks.clear();
+			spare = chunk;
+		} else if (last == 0) {
+			chunks.removeLast();
+			spare = chunk;
+			last = CHUNK_SIZE;
+		}
+		return next;
+	}
+} // class SegmentedStack
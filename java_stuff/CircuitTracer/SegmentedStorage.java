@@ -0,0 +1,66 @@
+import java.util.ArrayDeque;
+
+/** A Storage backed by a chain of fixed-size chunks. Elements go into
+ *  array slots, so there is no node per element; a chunk is only
+ *  allocated every CHUNK_SIZE elements, and one emptied chunk is kept
+ *  for reuse. Unlike a circular array, the storage never copies its
+ *  elements to grow and gives chunks back as it shrinks, so a queue
+ *  whose size swings widely, like a breadth-first frontier, does not
+ *  hold on to the memory of its largest size. SegmentedStack and
+ *  SegmentedQueue supply the retrieval order, so neither tests which
+ *  end to take on every retrieve.
+ *
+ *  @author Andrew Kobus
+ */
+public abstract class SegmentedStorage<T> implements Storage<T>
+{
+	/** elements per chunk */
+	static final int CHUNK_SIZE = 1024;
+	/** the chunks, oldest elements first */
+	protected final ArrayDeque<Object[]> chunks;
+	/** emptied chunk kept for the next one needed, or null */
+	protected Object[] spare;
+	/** index of the oldest element in the first chunk */
+	protected int first;
+	/** index after the newest element in the last chunk */
+	protected int last;
+	protected int size;
+
+	/** Constructor */
+	protected SegmentedStorage()
+	{
+		chunks = new ArrayDeque<Object[]>();
+	}
+
+	public void store(T element)
+	{
+		if (chunks.isEmpty()) {
+			chunks.addLast(newChunk());
+			first = 0;
+			last = 0;
+		} else if (last == CHUNK_SIZE) {
+			chunks.addLast(newChunk());
+			last = 0;
+		}
+		chunks.peekLast()[last++] = element;
+		size++;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/** @return the spare chunk, or a new one if there is none */
+	private Object[] newChunk()
+	{
+		Object[] chunk = spare;
+		spare = null;
+		return chunk != null ? chunk : new Object[CHUNK_SIZE];
+	}
+} // class SegmentedStorage
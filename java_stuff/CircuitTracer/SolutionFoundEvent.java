@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event committed whenever the search finds a complete path that is at
+ * least as short as the best paths found so far.
+ * 
+ * @author Andrew Kobus
+ */
+@Name("CircuitTracer.SolutionFound")
+@Label("Solution Found")
+@Category({"CircuitTracer"})
+@Description("A complete path as short as or shorter than the best paths so far")
+class SolutionFoundEvent extends Event {
+	/** checked before creating an event, so solutions cost nothing extra while recording is off */
+	static final EventType TYPE = EventType.getEventType(SolutionFoundEvent.class);
+
+	@Label("Path Length")
+	int pathLength;
+
+	@Label("Improved")
+	@Description("true if the path is shorter than every path found before it")
+	boolean improved;
+
+	@Label("Best Paths")
+	@Description("Number of shortest paths found so far, including this one")
+	int bestPaths;
+
+	@Label("States Expanded")
+	long statesExpanded;
+}
@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A stack or a queue that keeps a bounded number of elements in memory and spills the
+ * rest to disk, so a search frontier can grow larger than the heap.
+ *
+ * Elements are kept in memory in segments of a fixed number of elements. A stack keeps
+ * its top in memory; once that holds two segments, the older one is encoded and written
+ * to a memory-mapped temporary file. A queue keeps its head, which is being retrieved,
+ * and its tail, which is being stored, in memory; a full tail segment is written to a
+ * file unless the head is empty. Spilled segments are read back in stack or queue order
+ * when the elements in memory run out. The next segment to be read is decoded on a
+ * background thread as soon as the elements in memory drop below half a segment, so the
+ * search rarely waits for the disk.
+ *
+ * If a segment cannot be written, for example because the disk is full, spilling stops
+ * and the elements stay in memory, so the search continues for as long as the heap lasts.
+ *
+ * @author Andrew Kobus
+ * @param <T> type of the elements
+ */
+public class SpillingDeque<T> implements Storage<T> {
+	/** Converts elements to and from bytes. Decoding may run on the prefetch thread. */
+	public interface Codec<T> {
+		/** @return number of bytes encode writes for the element */
+		int encodedSize(T element);
+
+		/** Writes the element at the buffer's position and advances it */
+		void encode(T element, ByteBuffer out);
+
+		/**
+		 * @param in buffer positioned at an element
+		 * @param previous element decoded just before from the same segment, or null for the first,
+		 *  which the decoded element may share parts with
+		 * @return the element at the buffer's position, advancing past it
+		 */
+		T decode(ByteBuffer in, T previous);
+	}
+
+	/** decodes spilled segments ahead of time; daemon threads, so it never keeps the program running */
+	private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "spilling-deque-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final boolean lifo;
+	private final Codec<T> codec;
+	private final int segmentSize;
+	/** the top of a stack, or the head of a queue */
+	private ArrayDeque<T> head;
+	/** the tail of a queue; unused by a stack */
+	private ArrayDeque<T> tail;
+	/** spilled segments: bottom of a stack first, or front of a queue first */
+	private final ArrayDeque<Segment> spilled;
+	private long size;
+	private long segmentsSpilled;
+	/** true once writing a segment failed; no further segment is spilled */
+	private boolean spillFailed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param lifo true for a stack, false for a queue
+	 * @param codec how elements are written to disk
+	 * @param segmentSize number of elements per spilled segment; up to about three
+	 *  segments are kept in memory
+	 */
+	public SpillingDeque(boolean lifo, Codec<T> codec, int segmentSize) {
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("segment size must be positive");
+		}
+		this.lifo = lifo;
+		this.codec = codec;
+		this.segmentSize = segmentSize;
+		head = new ArrayDeque<T>();
+		tail = new ArrayDeque<T>();
+		spilled = new ArrayDeque<Segment>();
+	}
+
+	/** Add an element
+	 * @param element element to store
+	 */
+	public void store(T element) {
+		size++;
+		if (lifo) {
+			head.addLast(element);
+			if (head.size() >= 2 * segmentSize && !spillFailed) {
+				// the older half is the one needed last
+				ArrayList<T> bottom = new ArrayList<T>(segmentSize);
+				for (int i = 0; i < segmentSize; i++) {
+					bottom.add(head.removeFirst());
+				}
+				if (!spilled.isEmpty()) {
+					spilled.peekLast().cancelPrefetch(); // it is no longer the next segment to read
+				}
+				spill(bottom, head);
+			}
+		} else {
+			tail.addLast(element);
+			if (tail.size() >= segmentSize) {
+				if (head.isEmpty() && spilled.isEmpty()) {
+					ArrayDeque<T> swap = head;
+					head = tail;
+					tail = swap;
+				} else if (!spillFailed) {
+					ArrayList<T> segment = new ArrayList<T>(tail);
+					tail.clear();
+					spill(segment, tail);
+				}
+			}
+		}
+	}
+
+	/** Remove and return the next element, the newest for a stack or the oldest for a queue
+	 * @return next element
+	 * @throws java.util.NoSuchElementException if the deque is empty
+	 * @throws UncheckedIOException if a spilled segment cannot be read back
+	 */
+	public T retrieve() {
+		if (head.isEmpty()) {
+			if (!spilled.isEmpty()) {
+				Segment segment = lifo ? spilled.removeLast() : spilled.removeFirst();
+				head.addAll(segment.load());
+			} else if (!lifo) {
+				ArrayDeque<T> swap = head;
+				head = tail;
+				tail = swap;
+			}
+		}
+		T next = lifo ? head.removeLast() : head.removeFirst();
+		size--;
+		if (head.size() < segmentSize / 2 && !spilled.isEmpty()) {
+			(lifo ? spilled.peekLast() : spilled.peekFirst()).prefetch();
+		}
+		return next;
+	}
+
+	/** @return true if empty, else false */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** @return number of elements, in memory and on disk, or Integer.MAX_VALUE if there are more */
+	public int size() {
+		return (int) Math.min(Integer.MAX_VALUE, size);
+	}
+
+	/** @return number of segments written to disk so far */
+	public long getSegmentsSpilled() {
+		return segmentsSpilled;
+	}
+
+	/**
+	 * Writes elements to a new segment file, or puts them back in memory if that fails.
+	 *
+	 * @param elements elements of the segment, in storage order
+	 * @param fallback where the elements go back to if they cannot be written
+	 */
+	private void spill(ArrayList<T> elements, ArrayDeque<T> fallback) {
+		try {
+			spilled.addLast(new Segment(elements));
+			segmentsSpilled++;
+		} catch (IOException | UncheckedIOException e) {
+			spillFailed = true;
+			if (lifo) {
+				for (int i = elements.size() - 1; i >= 0; i--) {
+					fallback.addFirst(elements.get(i));
+				}
+			} else {
+				fallback.addAll(elements);
+			}
+		}
+	}
+
+	/** A run of elements encoded in a temporary file. */
+	private class Segment {
+		private final Path file;
+		private final int count;
+		private Future<ArrayList<T>> prefetched;
+
+		/**
+		 * Writes the elements through a mapping of a new temporary file.
+		 *
+		 * @param elements the elements, in storage order
+		 * @throws IOException if the file cannot be created or written
+		 */
+		Segment(ArrayList<T> elements) throws IOException {
+			long bytes = 0;
+			for (T element : elements) {
+				bytes += codec.encodedSize(element);
+			}
+			if (bytes > Integer.MAX_VALUE) {
+				throw new IOException("segment of " + bytes + " bytes is too large to map");
+			}
+			file = Files.createTempFile("circuit-tracer-", ".segment");
+			file.toFile().deleteOnExit();
+			count = elements.size();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+				for (T element : elements) {
+					codec.encode(element, out);
+				}
+			} catch (IOException | RuntimeException e) {
+				Files.deleteIfExists(file);
+				throw e;
+			}
+		}
+
+		/** Starts decoding the segment on the prefetch thread, if it has not started yet */
+		void prefetch() {
+			if (prefetched == null) {
+				prefetched = PREFETCHER.submit(this::read);
+			}
+		}
+
+		/** Drops a prefetch that has not been used */
+		void cancelPrefetch() {
+			if (prefetched != null) {
+				prefetched.cancel(false);
+				prefetched = null;
+			}
+		}
+
+		/**
+		 * Reads the segment back and deletes its file.
+		 *
+		 * @return the elements, in storage order
+		 */
+		ArrayList<T> load() {
+			try {
+				if (prefetched != null) {
+					try {
+						return prefetched.get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof UncheckedIOException) {
+							throw (UncheckedIOException) e.getCause();
+						} else if (e.getCause() instanceof Error) {
+							throw (Error) e.getCause();
+						}
+						throw new IllegalStateException(e.getCause());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return read();
+			} finally {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					// left for deleteOnExit
+				}
+			}
+		}
+
+		/** @return the elements decoded from the file, in storage order */
+		private ArrayList<T> read() {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				ArrayList<T> elements = new ArrayList<T>(count);
+				T previous = null;
+				for (int i = 0; i < count; i++) {
+					previous = codec.decode(in, previous);
+					elements.add(previous);
+				}
+				return elements;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -1,122 +1,113 @@
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Stack;
+import java.util.Comparator;
 
-/** A container for storing elements of type T in one of several
- *  possible underlying data structures.
- *  Additional data structures (or variations on data structures)
- *  can be added by adding to the DataStructure enum values and
- *  adding corresponding cases to wrapper methods.
- *  This is an example of a design pattern known as a Bridge,
- *  that allows users to interact with potentially many different
- *  classes through a common interface.
- *  
+/** A container for storing elements of type T, retrieved in an
+ *  order that depends on the implementation: last in first out,
+ *  first in first out, or smallest first.
+ *  Searches use the static factory methods to choose an order
+ *  and interact with every implementation through this common
+ *  interface. Additional data structures (or variations on data
+ *  structures) can be added by implementing this interface and
+ *  adding a factory method.
+ *
  *  @author CS221
  */
-public class Storage<T> 
+public interface Storage<T>
 {
-	/** supported underlying data structures for Storage to use */
-	public static enum DataStructure {stack, queue}
-	/** the data structure chosen for this Storage to use */
-	private DataStructure dataStructure;
-	/** the data structures - only one will be instantiated and used  */
-	private Queue<T> queue;
-	private Stack<T> stack;
-	
-	/** Constructor
-	 * @param dataStructure choice of DataStructures 
+	/** Add element to underlying data structure
+	 * @param element T to store
+	 */
+	void store(T element);
+
+	/** Remove and return the next T from storage
+	 * @return next T from storage
+	 * @throws java.util.NoSuchElementException if storage is empty
 	 */
-	public Storage(DataStructure dataStructure) 
+	T retrieve();
+
+	/** @return true if store is empty, else false */
+	boolean isEmpty();
+
+	/** @return size of store */
+	int size();
+
+	/** @return number of segments a spilling Storage has written to disk, 0 for the others */
+	default long getSegmentsSpilled()
 	{
-		this.dataStructure = dataStructure;
-		switch (this.dataStructure) 
-		{
-			case stack:
-				stack = new Stack<T>();
-				break;
-			case queue:
-				queue = new LinkedList<T>();
-		}
+		return 0;
 	}
 
-	/** Alternative to using the constructor returns
- 	 * a Storage already configured to use a Stack
- 	 * @return instance of Storage configured to use a Stack
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to be used as a stack,
+ 	 * backed by a growable circular array
+ 	 * @return instance of Storage that retrieves the newest element first
  	 */
-	public static <E> Storage<E> getStackInstance() 
+	static <E> Storage<E> getStackInstance()
 	{
-		return new Storage<E>(DataStructure.stack);
+		return new RingBufferStack<E>();
 	}
-	
-	/** Alternative to using the constructor returns
- 	 * a Storage already configured to use a Queue
- 	 * @return instance of Storage configured to use a Queue
+
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to be used as a queue,
+ 	 * backed by a growable circular array
+ 	 * @return instance of Storage that retrieves the oldest element first
  	 */
-	public static <E> Storage<E> getQueueInstance() 
+	static <E> Storage<E> getQueueInstance()
 	{
-		return new Storage<E>(DataStructure.queue);
+		return new RingBufferQueue<E>();
 	}
-	
-	/** Add element to underlying data structure
-	 * @param element T to store
-	 */
-	public void store(T element) 
+
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to be used as a stack,
+ 	 * backed by a chain of fixed-size chunks
+ 	 * @return instance of Storage that retrieves the newest element first
+ 	 */
+	static <E> Storage<E> getSegmentedStackInstance()
 	{
-		switch (dataStructure) 
-		{
-			case stack:
-				stack.push(element);
-				break;
-			case queue:
-				queue.add(element);
-		}
+		return new SegmentedStack<E>();
 	}
-	
-	/** Remove and return the next T from storage
-	 * @return next T from storage
-	 */
-	public T retrieve() 
+
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to be used as a queue,
+ 	 * backed by a chain of fixed-size chunks
+ 	 * @return instance of Storage that retrieves the oldest element first
+ 	 */
+	static <E> Storage<E> getSegmentedQueueInstance()
 	{
-		T next = null;
-		switch (dataStructure) 
-		{
-			case stack:
-				next = stack.pop();
-				break;
-			case queue:
-				next = queue.remove();
-		}
-		
-		return next;
+		return new SegmentedQueue<E>();
 	}
-	
-	/** @return true if store is empty, else false */
-	public boolean isEmpty() 
+
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to use a priority queue
+ 	 * (a binary heap) that retrieves the smallest element first
+ 	 * @param comparator order of the elements
+ 	 * @return instance of Storage configured to use a priority queue
+ 	 */
+	static <E> Storage<E> getPriorityInstance(Comparator<? super E> comparator)
 	{
-		boolean result = true;
-		switch (dataStructure) 
-		{
-			case stack:
-				result = stack.isEmpty();
-				break;
-			case queue:
-				result = queue.isEmpty();
-		}
-		return result;
+		return new PriorityStorage<E>(comparator);
 	}
-	
-	/** @return size of store */
-	public int size() 
+
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to use a stack that keeps
+ 	 * its top in memory and spills the rest to disk
+ 	 * @param codec how elements are written to disk
+ 	 * @param segmentSize number of elements per segment written to disk
+ 	 * @return instance of Storage configured to use a spilling stack
+ 	 */
+	static <E> Storage<E> getSpillingStackInstance(SpillingDeque.Codec<E> codec, int segmentSize)
+	{
+		return new SpillingDeque<E>(true, codec, segmentSize);
+	}
+
+	/** Alternative to using a constructor returns
+ 	 * a Storage already configured to use a queue that keeps
+ 	 * its head and tail in memory and spills the rest to disk
+ 	 * @param codec how elements are written to disk
+ 	 * @param segmentSize number of elements per segment written to disk
+ 	 * @return instance of Storage configured to use a spilling queue
+ 	 */
+	static <E> Storage<E> getSpillingQueueInstance(SpillingDeque.Codec<E> codec, int segmentSize)
 	{
-		int size = 0;
-		switch (dataStructure) 
-		{
-			case stack:
-				size = stack.size();
-				break;
-			case queue:
-				size = queue.size();
-		} 
-		return size;
+		return new SpillingDeque<E>(false, codec, segmentSize);
 	}
-} // class Storage
+} // interface Storage
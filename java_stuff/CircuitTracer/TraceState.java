@@ -1,15 +1,30 @@
 import java.awt.Point;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
  * Represents a search state including a potential path through a CircuitBoard
- * 
+ *
+ * A state is an immutable node: the last point of its path, the path length and a
+ * pointer to the previous state. States that extend the same path share it, and all
+ * states grown from one initial state share that state's copy of the starting board,
+ * which is never modified. Creating a state therefore takes constant time and memory;
+ * the board with the path filled in is only built when it is asked for.
+ *
  * @author mvail
  */
 public class TraceState {
-	private CircuitBoard board;
-	private ArrayList<Point> path;
-	
+	/** starting board without the path, shared by every state grown from the same initial state */
+	private final CircuitBoard board;
+	/** previous state, or null for an initial state */
+	private final TraceState parent;
+	/** cell index of the last point in the path */
+	private final int cell;
+	/** number of points in the path */
+	private final int length;
+	/** estimated length of a complete path extending this one, or 0 if none is cached */
+	private int estimate;
+
 	/** Initial state with the trace path beginning at given row and column
 	 * @param startingBoard
 	 * @param row initial path row
@@ -17,87 +32,203 @@ public class TraceState {
 	 */
 	public TraceState(CircuitBoard startingBoard, int row, int col) {
 		board = new CircuitBoard(startingBoard);
-		path = new ArrayList<Point>();
-		board.makeTrace(row, col); //will throw exception if row, col is occupied
-		path.add(new Point(row, col));
+		if (!board.isOpen(row, col)) {
+			board.makeTrace(row, col); //throws exception because row, col is occupied
+		}
+		parent = null;
+		cell = board.cellIndex(row, col);
+		length = 1;
 	}
-	
+
 	/** New state adding given row and column position to the path from previous state
 	 * @param previousState
 	 * @param row row of next point to add to the path
 	 * @param col column of next point to add to the path
 	 */
 	public TraceState(TraceState previousState, int row, int col) {
-		board = new CircuitBoard(previousState.board);
-		path = new ArrayList<Point>(previousState.path);
-		board.makeTrace(row, col); //will throw exception if row, col is occupied
-		path.add(new Point(row, col));
+		if (!previousState.isOpen(row, col)) {
+			throw new OccupiedPositionException("row " + row + ", col " + col + "contains '"
+					+ (previousState.onPath(row, col) ? 'T' : previousState.board.charAt(row, col)) + "'");
+		}
+		board = previousState.board;
+		parent = previousState;
+		cell = board.cellIndex(row, col);
+		length = previousState.length + 1;
 	}
-	
+
+	/** State built from known valid parts, without checks
+	 * @param board starting board shared with the previous state
+	 * @param parent previous state, or null
+	 * @param cell cell index of the last point in the path
+	 * @param length number of points in the path
+	 */
+	private TraceState(CircuitBoard board, TraceState parent, int cell, int length) {
+		this.board = board;
+		this.parent = parent;
+		this.cell = cell;
+		this.length = length;
+	}
+
 	/** Indicates if a position is open in this state's board
 	 * @param row row of position to check
 	 * @param col column of position to check
 	 * @return true if given row and column position is open
 	 */
 	public boolean isOpen(int row, int col) {
-		return board.isOpen(row, col);
+		return board.isOpen(row, col) && !onPath(row, col);
 	}
-	
+
+	/**
+	 * @param row row of position to check
+	 * @param col column of position to check
+	 * @return true if the position is one of the points of this state's path
+	 */
+	private boolean onPath(int row, int col) {
+		return onPath(board.cellIndex(row, col));
+	}
+
+	/**
+	 * @param target cell index of position to check
+	 * @return true if the position is one of the points of this state's path
+	 */
+	private boolean onPath(int target) {
+		for (TraceState ts = this; ts != null; ts = ts.parent) {
+			if (ts.cell == target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/** @return path length */
 	public int pathLength() {
-		return path.size();
+		return length;
 	}
-	
+
+	/** @return estimated length cached by setEstimate(), or 0 if none has been */
+	public int getEstimate() {
+		return estimate;
+	}
+
+	/** Caches a search's estimate for this state, so it is not recomputed on every comparison
+	 * @param estimate estimated length of a complete path extending this one, at least 1
+	 */
+	public void setEstimate(int estimate) {
+		this.estimate = estimate;
+	}
+
 	/** @return row of the last point in the path */
 	public int getRow() {
-		return path.get(path.size()-1).x;
+		return board.cellRow(cell);
 	}
-	
+
 	/** @return column of the last point in the path */
 	public int getCol() {
-		return path.get(path.size()-1).y;
+		return board.cellCol(cell);
 	}
-	
+
 	/** @return the current CircuitBoard from this state with the path filled in with 'T's */
 	public CircuitBoard getBoard() {
-		return new CircuitBoard(board);
+		CircuitBoard filled = new CircuitBoard(board);
+		for (TraceState ts = this; ts != null; ts = ts.parent) {
+			filled.makeTrace(ts.getRow(), ts.getCol());
+		}
+		return filled;
 	}
-	
+
 	/** @return list of row, column points that make up the path */
 	public ArrayList<Point> getPath() {
-		return new ArrayList<Point>(path);
+		Point[] points = new Point[length];
+		for (TraceState ts = this; ts != null; ts = ts.parent) {
+			points[ts.length-1] = new Point(ts.getRow(), ts.getCol());
+		}
+		ArrayList<Point> path = new ArrayList<Point>(length);
+		for (Point p : points) {
+			path.add(p);
+		}
+		return path;
 	}
-	
+
 	/** @return true if path ends adjacent to ending component */
 	public boolean isComplete() {
-		return adjacent(path.get(path.size()-1), board.getEndingPoint());
+		int distance = Math.abs(cell - board.getEndingCell());
+		return distance == 1 || distance == board.cellStride();
 	}
-	
+
 	/**
-	 * @param p1 first Point
-	 * @param p2 second Point
-	 * @return true if p1 and p2 are adjacent, else false
+	 * Writes trace states for a SpillingDeque in a few bytes: the cell index of the first
+	 * point and the path length, then two bits per step for the direction it goes in.
+	 * Decoded states share the starting board of the first state that was encoded, which
+	 * has the same contents as every other state's since starting boards are never modified,
+	 * so a codec must only be used for the states of one search. A decoded state shares the
+	 * beginning of its path with the state decoded before it, as far as they are the same,
+	 * so states stored one after the other keep sharing their common ancestors.
 	 */
-	private boolean adjacent(Point p1, Point p2) {
-		if (p1.x-1 == p2.x && p1.y == p2.y) {
-			return true;
-		}
-		if (p1.x+1 == p2.x && p1.y == p2.y) {
-			return true;
+	public static class Codec implements SpillingDeque.Codec<TraceState> {
+		private CircuitBoard board;
+
+		public int encodedSize(TraceState ts) {
+			return 8 + (ts.length + 2) / 4; // length - 1 steps, four to a byte
 		}
-		if (p1.x == p2.x && p1.y-1 == p2.y) {
-			return true;
+
+		public void encode(TraceState ts, ByteBuffer out) {
+			if (board == null) {
+				board = ts.board;
+			}
+			int[] cells = new int[ts.length];
+			for (TraceState s = ts; s != null; s = s.parent) {
+				cells[s.length-1] = s.cell;
+			}
+			out.putInt(cells[0]);
+			out.putInt(ts.length);
+			int stride = board.cellStride();
+			int packed = 0;
+			for (int i = 1; i < cells.length; i++) {
+				int step = cells[i] - cells[i-1];
+				int direction = step == 1 ? 0 : step == stride ? 1 : step == -1 ? 2 : 3;
+				packed |= direction << (2 * ((i-1) % 4));
+				if ((i-1) % 4 == 3 || i == cells.length - 1) {
+					out.put((byte) packed);
+					packed = 0;
+				}
+			}
 		}
-		if (p1.x == p2.x && p1.y+1 == p2.y) {
-			return true;
+
+		public TraceState decode(ByteBuffer in, TraceState previous) {
+			int first = in.getInt();
+			int[] cells = new int[in.getInt()];
+			cells[0] = first;
+			int[] steps = {1, board.cellStride(), -1, -board.cellStride()};
+			int packed = 0;
+			for (int i = 1; i < cells.length; i++) {
+				if ((i-1) % 4 == 0) {
+					packed = in.get();
+				}
+				cells[i] = cells[i-1] + steps[(packed >>> (2 * ((i-1) % 4))) & 3];
+			}
+			// reuse the longest beginning of the previous path that is the same
+			TraceState[] shared = new TraceState[previous == null ? 0 : Math.min(previous.length, cells.length)];
+			for (TraceState s = previous; s != null; s = s.parent) {
+				if (s.length <= shared.length) {
+					shared[s.length-1] = s;
+				}
+			}
+			TraceState ts = null;
+			int i = 0;
+			while (i < shared.length && shared[i].cell == cells[i]) {
+				ts = shared[i++];
+			}
+			for (; i < cells.length; i++) {
+				ts = new TraceState(board, ts, cells[i], i + 1);
+			}
+			return ts;
 		}
-		return false;
 	}
-	
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return board.toString();
+		return getBoard().toString();
 	}
 }
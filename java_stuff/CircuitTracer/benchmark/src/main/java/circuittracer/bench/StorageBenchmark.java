@@ -0,0 +1,137 @@
+package circuittracer.bench;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH comparison of the store/retrieve throughput of the Storage implementations with the
+ * java.util.Stack and LinkedList the original Storage class wrapped, dispatched through a
+ * switch as it did. The build in this directory copies the Storage sources into this package
+ * and brings in JMH; from the benchmark directory:
+ *
+ *   mvn package
+ *   java -jar target/benchmarks.jar StorageBenchmark
+ *
+ * @author Andrew Kobus
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+	/** legacy (the original Stack and LinkedList), ringBuffer or segmented */
+	@Param({"legacy", "ringBuffer", "segmented"})
+	public String implementation;
+	/** stack or queue */
+	@Param({"stack", "queue"})
+	public String order;
+	/** number of elements stored per operation */
+	@Param({"1000", "1000000"})
+	public int elements;
+
+	private final Object element = new Object();
+
+	/** @return a new, empty Storage of the benchmarked implementation and order */
+	private Storage<Object> newStorage() {
+		boolean lifo = order.equals("stack");
+		switch (implementation) {
+		case "legacy":
+			return new LegacyStorage<Object>(lifo);
+		case "ringBuffer":
+			return lifo ? new RingBufferStack<Object>() : new RingBufferQueue<Object>();
+		default:
+			return lifo ? new SegmentedStack<Object>() : new SegmentedQueue<Object>();
+		}
+	}
+
+	/** Stores all the elements, then retrieves them all. */
+	@Benchmark
+	public void fillAndDrain(Blackhole blackhole) {
+		Storage<Object> storage = newStorage();
+		for (int i = 0; i < elements; i++) {
+			storage.store(element);
+		}
+		while (!storage.isEmpty()) {
+			blackhole.consume(storage.retrieve());
+		}
+	}
+
+	/** Grows a frontier like a search: every element retrieved is replaced by two until all are stored. */
+	@Benchmark
+	public void expandFrontier(Blackhole blackhole) {
+		Storage<Object> storage = newStorage();
+		storage.store(element);
+		int stored = 1;
+		while (!storage.isEmpty()) {
+			blackhole.consume(storage.retrieve());
+			for (int i = 0; i < 2 && stored < elements; i++, stored++) {
+				storage.store(element);
+			}
+		}
+	}
+
+	/** The original Storage: a java.util.Stack or a LinkedList selected by a switch on every call. */
+	private static class LegacyStorage<T> implements Storage<T> {
+		private static enum DataStructure {stack, queue}
+		private final DataStructure dataStructure;
+		private Stack<T> stack;
+		private Queue<T> queue;
+
+		LegacyStorage(boolean lifo) {
+			dataStructure = lifo ? DataStructure.stack : DataStructure.queue;
+			switch (dataStructure) {
+			case stack:
+				stack = new Stack<T>();
+				break;
+			case queue:
+				queue = new LinkedList<T>();
+			}
+		}
+
+		public void store(T element) {
+			switch (dataStructure) {
+			case stack:
+				stack.push(element);
+				break;
+			case queue:
+				queue.add(element);
+			}
+		}
+
+		public T retrieve() {
+			T next = null;
+			switch (dataStructure) {
+			case stack:
+				next = stack.pop();
+				break;
+			case queue:
+				next = queue.remove();
+			}
+			return next;
+		}
+
+		public boolean isEmpty() {
+			return dataStructure == DataStructure.stack ? stack.isEmpty() : queue.isEmpty();
+		}
+
+		public int size() {
+			return dataStructure == DataStructure.stack ? stack.size() : queue.size();
+		}
+	}
+}